@@ -0,0 +1,229 @@
+package ca.utoronto.utm.paint;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks of the hot paths: parsing, saving and rendering a synthetic
+ * drawing of a given number of shapes, a third each circles, rectangles, and
+ * squiggles of a given number of points.
+ * Rendering is measured against a RecordingRenderer, so it needs no JavaFX.
+ *
+ * This, and RecordingRenderer, are in bench/, compiled with the sources in
+ * paint/ and JMH, so the application itself builds with only JavaFX.
+ * Run main, with JMH on the class path, to run them all with the GC profiler,
+ * which reports the allocation rate (gc.alloc.rate.norm, bytes per operation)
+ * next to the time. JMH command line options, such as -p shapes=100000, are passed on.
+ * RESPONDS-TO PaintFileParser, PaintBinaryFileParser, PaintModel, View, PaintCommand
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaintBenchmark {
+	@Param({ "1000", "10000" })
+	public int shapes;
+
+	@Param({ "100" })
+	public int points; // per squiggle
+
+	private PaintModel model;
+	private String text; // model in the Version 1.0 format
+	private File textFile, binaryFile, savedFile;
+	private byte[] binary; // model in the Version 2.0 format
+	private RecordingRenderer renderer = new RecordingRenderer();
+	private Rect region = new Rect(100, 100, 300, 300); // a dirty area, as repainted after an edit
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		new Runner(new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.include(PaintBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+
+	/**
+	 * @return a drawing of the given number of shapes, a third of each kind, scattered over 1000x1000
+	 */
+	static PaintModel generate(int shapes, int points, long seed) {
+		Random random = new Random(seed);
+		PaintModel model = new PaintModel();
+		for (int i = 0; i < shapes; i++) {
+			int x = random.nextInt(1000), y = random.nextInt(1000);
+			switch (i % 3) {
+			case 0:
+				model.addCommand(new CircleCommand(new Point(x, y), random.nextInt(50)));
+				break;
+			case 1:
+				model.addCommand(new RectangleCommand(new Point(x, y), new Point(x + random.nextInt(100), y + random.nextInt(100))));
+				break;
+			default:
+				SquiggleCommand squiggle = new SquiggleCommand();
+				for (int j = 0; j < points; j++) {
+					x += random.nextInt(5) - 2;
+					y += random.nextInt(5) - 2;
+					squiggle.add(x, y);
+				}
+				model.addCommand(squiggle);
+			}
+		}
+		return model;
+	}
+
+	@Setup
+	public void setup() throws IOException {
+		this.model = generate(this.shapes, this.points, 42);
+		StringWriter s = new StringWriter();
+		this.model.save(new PrintWriter(s));
+		this.text = s.toString();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		this.model.saveBinary(out);
+		this.binary = out.toByteArray();
+
+		this.textFile = File.createTempFile("paint", ".txt");
+		Files.write(this.textFile.toPath(), this.text.getBytes(StandardCharsets.UTF_8));
+		this.binaryFile = File.createTempFile("paint", View.BINARY_EXTENSION);
+		Files.write(this.binaryFile.toPath(), this.binary);
+		this.savedFile = File.createTempFile("paint", ".txt");
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.textFile.delete();
+		this.binaryFile.delete();
+		this.savedFile.delete();
+	}
+
+	/**
+	 * A PrintWriter that throws away what is written, so only serialization is measured
+	 */
+	private static PrintWriter nullWriter() {
+		return new PrintWriter(Writer.nullWriter());
+	}
+
+	@Benchmark
+	public PaintModel parseReader() {
+		PaintModel m = new PaintModel();
+		new PaintFileParser().parse(new BufferedReader(new StringReader(this.text)), m);
+		return m;
+	}
+
+	@Benchmark
+	public PaintModel parseFile() {
+		PaintModel m = new PaintModel();
+		new PaintFileParser().parse(this.textFile, m);
+		return m;
+	}
+
+	@Benchmark
+	public PaintModel parseFileParallel() {
+		PaintModel m = new PaintModel();
+		new ParallelPaintFileParser().parse(this.textFile, m);
+		return m;
+	}
+
+	@Benchmark
+	public PaintModel parseBinary() {
+		PaintModel m = new PaintModel();
+		new PaintBinaryFileParser().parse(ByteBuffer.wrap(this.binary), m);
+		return m;
+	}
+
+	@Benchmark
+	public PaintModel parseBinaryFile() {
+		PaintModel m = new PaintModel();
+		new PaintBinaryFileParser().parse(this.binaryFile, m);
+		return m;
+	}
+
+	@Benchmark
+	public void save() {
+		this.model.save(nullWriter());
+	}
+
+	@Benchmark
+	public void viewSave() {
+		View.save(nullWriter(), this.model);
+	}
+
+	@Benchmark
+	public void saveBinary() throws IOException {
+		this.model.saveBinary(OutputStream.nullOutputStream());
+	}
+
+	@Benchmark
+	public void saveFile() throws IOException {
+		try (OutputStream out = new FileOutputStream(this.savedFile)) {
+			this.model.save(new PrintWriter(new BufferedWriter(new OutputStreamWriter(out), 1 << 16)));
+		}
+	}
+
+	/**
+	 * The old print(), one String per command
+	 */
+	@Benchmark
+	public void print(Blackhole blackhole) {
+		for (PaintCommand c : this.model.getCommands()) {
+			blackhole.consume(c.print());
+		}
+	}
+
+	@Benchmark
+	public long executeAll() {
+		this.renderer.reset();
+		this.model.executeAll(this.renderer);
+		return this.renderer.getOperations();
+	}
+
+	/**
+	 * Repainting a small dirty area, through the spatial index
+	 */
+	@Benchmark
+	public long executeRegion() {
+		this.renderer.reset();
+		this.model.execute(this.renderer, this.region);
+		return this.renderer.getOperations();
+	}
+
+	@Benchmark
+	public int snapshot() {
+		return this.model.getSnapshot().size();
+	}
+}
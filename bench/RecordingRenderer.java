@@ -0,0 +1,32 @@
+package ca.utoronto.utm.paint;
+
+import javafx.scene.paint.Color;
+
+/**
+ * IS-A Renderer that draws nothing, it only counts the operations it is asked
+ * for and the points it is given, so rendering can be measured, or checked,
+ * without JavaFX. See PaintBenchmark.
+ */
+public class RecordingRenderer implements Renderer {
+	private long operations; // shapes drawn and colors set
+	private long points; // polyline points drawn
+	private Color last; // last color set, so it is not optimized away
+
+	public long getOperations() { return this.operations; }
+	public long getPoints() { return this.points; }
+	public Color getLastColor() { return this.last; }
+
+	public void reset() {
+		this.operations = 0;
+		this.points = 0;
+		this.last = null;
+	}
+
+	public void setFill(Color color) { this.last = color; this.operations++; }
+	public void setStroke(Color color) { this.last = color; this.operations++; }
+	public void fillOval(double x, double y, double w, double h) { this.operations++; }
+	public void strokeOval(double x, double y, double w, double h) { this.operations++; }
+	public void fillRect(double x, double y, double w, double h) { this.operations++; }
+	public void strokeRect(double x, double y, double w, double h) { this.operations++; }
+	public void strokePolyline(double[] xs, double[] ys, int n) { this.operations++; this.points += n; }
+}
@@ -0,0 +1,85 @@
+package ca.utoronto.utm.paint;
+
+import java.awt.BasicStroke;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+
+import javafx.scene.paint.Color;
+
+/**
+ * IS-A Renderer drawing on a java.awt Graphics2D, such as that of a
+ * BufferedImage, so commands can be rendered with no JavaFX toolkit running.
+ * Strokes are one pixel wide and anti-aliased, as on a JavaFX canvas.
+ */
+public class AWTRenderer implements Renderer {
+	private Graphics2D g;
+	private java.awt.Color fill = java.awt.Color.BLACK, stroke = java.awt.Color.BLACK;
+	private Color fillFrom, strokeFrom; // what fill and stroke were made from
+	/**
+	 * Reused for every shape, so drawing allocates little
+	 */
+	private Ellipse2D.Double ellipse = new Ellipse2D.Double();
+	private Rectangle2D.Double rectangle = new Rectangle2D.Double();
+	private Path2D.Double path = new Path2D.Double();
+
+	public AWTRenderer(Graphics2D g) {
+		this.g = g;
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+		g.setStroke(new BasicStroke(1));
+	}
+
+	private static java.awt.Color convert(Color c) {
+		return new java.awt.Color((float) c.getRed(), (float) c.getGreen(), (float) c.getBlue(), (float) c.getOpacity());
+	}
+
+	public void setFill(Color color) {
+		if (color == this.fillFrom) return;
+		this.fillFrom = color;
+		this.fill = convert(color);
+	}
+
+	public void setStroke(Color color) {
+		if (color == this.strokeFrom) return;
+		this.strokeFrom = color;
+		this.stroke = convert(color);
+	}
+
+	public void fillOval(double x, double y, double w, double h) {
+		this.ellipse.setFrame(x, y, w, h);
+		this.g.setColor(this.fill);
+		this.g.fill(this.ellipse);
+	}
+
+	public void strokeOval(double x, double y, double w, double h) {
+		this.ellipse.setFrame(x, y, w, h);
+		this.g.setColor(this.stroke);
+		this.g.draw(this.ellipse);
+	}
+
+	public void fillRect(double x, double y, double w, double h) {
+		this.rectangle.setRect(x, y, w, h);
+		this.g.setColor(this.fill);
+		this.g.fill(this.rectangle);
+	}
+
+	public void strokeRect(double x, double y, double w, double h) {
+		this.rectangle.setRect(x, y, w, h);
+		this.g.setColor(this.stroke);
+		this.g.draw(this.rectangle);
+	}
+
+	public void strokePolyline(double[] xs, double[] ys, int n) {
+		if (n < 2) return;
+		this.path.reset();
+		this.path.moveTo(xs[0], ys[0]);
+		for (int i = 1; i < n; i++) {
+			this.path.lineTo(xs[i], ys[i]);
+		}
+		this.g.setColor(this.stroke);
+		this.g.draw(this.path);
+	}
+}
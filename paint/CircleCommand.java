@@ -1,5 +1,7 @@
 package ca.utoronto.utm.paint;
-import javafx.scene.canvas.GraphicsContext;
+import java.io.IOException;
+
+import javafx.scene.paint.Color;
 
 /**
  * IS-A PaintCommand
@@ -17,19 +19,64 @@ public class CircleCommand extends PaintCommand {
 	
 	public CircleCommand(){	}
 	
+	CircleCommand(Color color, boolean fill){
+		super(color, fill);
+	}
+	
 	public Point getCentre() { return centre; }
 	public void setCentre(Point centre) {
+		Rect before = this.changing();
 		this.centre = centre; 
-		this.setChanged();
-		this.notifyObservers();
+		this.invalidateBounds();
+		this.changed(before);
 	}
 	public int getRadius() { return radius; }
 	public void setRadius(int radius) { 
+		Rect before = this.changing();
 		this.radius = radius; 
-		this.setChanged();
-		this.notifyObservers();
+		this.invalidateBounds();
+		this.changed(before);
+	}
+	protected Rect computeBounds() {
+		if (centre == null) return Rect.EMPTY;
+		return Rect.around((long) centre.x - radius, (long) centre.y - radius, (long) centre.x + radius, (long) centre.y + radius);
+	}
+	int[] getState() {
+		int[] state = this.newState(centre == null ? 3 : 5);
+		state[2] = radius;
+		if (centre != null) {
+			state[3] = centre.x;
+			state[4] = centre.y;
+		}
+		return state;
 	}
-	public void execute(GraphicsContext g){
+	void setState(int[] state) {
+		Rect before = this.getBounds();
+		this.restoreState(state);
+		this.radius = state[2];
+		this.centre = state.length == 3 ? null : new Point(state[3], state[4]);
+		this.invalidateBounds();
+		this.changed(before);
+	}
+	/**
+	 * Inside the disc if filled, on the circle if not
+	 */
+	protected boolean hits(int x, int y, int tolerance) {
+		if (centre == null) return false;
+		long dx = (long) x - centre.x, dy = (long) y - centre.y, d = dx * dx + dy * dy;
+		long outer = (long) radius + tolerance + 1; // the stroke is about a pixel wide
+		if (d > outer * outer) return false;
+		if (this.isFill()) return true;
+		long inner = Math.max(0, (long) radius - tolerance - 1);
+		return d >= inner * inner;
+	}
+	PaintCommand copy() {
+		CircleCommand copy = new CircleCommand(this.getColor(), fill);
+		copy.centre = centre;
+		copy.radius = radius;
+		return copy;
+	}
+	public void execute(Renderer g){
 		int x = this.getCentre().x;
 		int y = this.getCentre().y;
 		int radius = this.getRadius();
@@ -41,17 +88,21 @@ public class CircleCommand extends PaintCommand {
 			g.strokeOval(x-radius, y-radius, 2*radius, 2*radius);
 		}
 	}
+	public void write(PaintBinaryWriter out) throws IOException {
+		out.writeShape(PaintBinaryWriter.CIRCLE, fill, r, g, b);
+		out.writeInt(centre.x);
+		out.writeInt(centre.y);
+		out.writeInt(radius);
+	}
 	/**
 	 * Print method which is used to write the data of the circle in the correct format to a file during saving.
 	 */
-	public String print(){
-		String s = "";
-		s+="Circle\n";
-		s+="\tcolor:"+r+","+g+","+b+"\n";
-		s+="\tfilled:"+fill+"\n";
-		s+="\tcenter:("+this.getCentre().x+","+this.getCentre().y+")\n";
-		s+="\tradius:"+ radius +"\n";
-		s+="End Circle";
-		return s;
+	public void print(Appendable out) throws IOException {
+		out.append("Circle\n");
+		out.append("\tcolor:"); printInt(out, r); out.append(','); printInt(out, g); out.append(','); printInt(out, b); out.append('\n');
+		out.append("\tfilled:").append(fill ? "true" : "false").append('\n');
+		out.append("\tcenter:("); printInt(out, this.getCentre().x); out.append(','); printInt(out, this.getCentre().y); out.append(")\n");
+		out.append("\tradius:"); printInt(out, radius); out.append('\n');
+		out.append("End Circle");
 	}
 }
@@ -0,0 +1,16 @@
+package ca.utoronto.utm.paint;
+
+import java.util.List;
+
+/**
+ * Receives the commands of a file, a batch at a time, while it is still being
+ * parsed, see PaintFileParser.setSink. Called on the parsing thread.
+ * RESPONDS-TO PaintFileParser, StreamLoadTask
+ */
+interface CommandSink {
+	/**
+	 * @param commands the next commands of the file, in order. Owned by the sink from now on.
+	 * @return false to cancel the parse
+	 */
+	boolean accept(List<PaintCommand> commands);
+}
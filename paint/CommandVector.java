@@ -0,0 +1,206 @@
+package ca.utoronto.utm.paint;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list of PaintCommands that shares structure with the lists it
+ * was made from. The commands are kept in a tree of 32 wide arrays, with the
+ * last (up to) 32 in a separate tail, so adding or removing the last command
+ * copies only the tail, or the few arrays on one path of the tree, and the
+ * old list is left as it was.
+ *
+ * A PaintModel holds its commands in one of these, so a snapshot is just the
+ * current list, and another thread can read it while the model moves on.
+ * RESPONDS-TO PaintModel, History
+ */
+final class CommandVector extends AbstractList<PaintCommand> implements RandomAccess {
+	private static final int BITS = 5;
+	private static final int WIDTH = 1 << BITS;
+	private static final int MASK = WIDTH - 1;
+	private static final Object[] EMPTY_NODE = new Object[WIDTH];
+
+	static final CommandVector EMPTY = new CommandVector(0, BITS, EMPTY_NODE, new Object[0]);
+
+	private final int size;
+	private final int shift; // of the root, BITS for a tree one array deep
+	private final Object[] root; // inner arrays hold arrays, the deepest hold commands
+	private final Object[] tail; // the last commands, not in the tree
+
+	private CommandVector(int size, int shift, Object[] root, Object[] tail) {
+		this.size = size;
+		this.shift = shift;
+		this.root = root;
+		this.tail = tail;
+	}
+
+	/**
+	 * @param commands
+	 * @return a CommandVector holding commands, in order
+	 */
+	static CommandVector of(List<PaintCommand> commands) {
+		if (commands instanceof CommandVector) return (CommandVector) commands;
+		int n = commands.size();
+		if (n == 0) return EMPTY;
+		CommandVector v = null;
+		for (int start = 0; start < n; start += WIDTH) {
+			Object[] chunk = commands.subList(start, Math.min(n, start + WIDTH)).toArray();
+			v = v == null ? new CommandVector(chunk.length, BITS, EMPTY_NODE, chunk) : v.withTail(chunk);
+		}
+		return v;
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public PaintCommand get(int i) {
+		if (i < 0 || i >= this.size) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + this.size);
+		return (PaintCommand) this.arrayFor(i)[i & MASK];
+	}
+
+	/**
+	 * @param command
+	 * @return this with command added at the end
+	 */
+	CommandVector plus(PaintCommand command) {
+		if (this.size - this.tailOffset() < WIDTH) {
+			Object[] tail = new Object[this.tail.length + 1];
+			System.arraycopy(this.tail, 0, tail, 0, this.tail.length);
+			tail[this.tail.length] = command;
+			return new CommandVector(this.size + 1, this.shift, this.root, tail);
+		}
+		return this.withTail(new Object[] { command });
+	}
+
+	/**
+	 * @return this without its last command
+	 */
+	CommandVector minusLast() {
+		if (this.size == 0) throw new IllegalStateException("Empty");
+		if (this.size == 1) return EMPTY;
+		if (this.size - this.tailOffset() > 1) {
+			Object[] tail = new Object[this.tail.length - 1];
+			System.arraycopy(this.tail, 0, tail, 0, tail.length);
+			return new CommandVector(this.size - 1, this.shift, this.root, tail);
+		}
+		// The tail empties, the last array of the tree becomes the tail
+		Object[] tail = this.arrayFor(this.size - 2);
+		Object[] root = this.popTail(this.shift, this.root);
+		int shift = this.shift;
+		if (root == null) root = EMPTY_NODE;
+		if (shift > BITS && root[1] == null) {
+			root = (Object[]) root[0];
+			shift -= BITS;
+		}
+		return new CommandVector(this.size - 1, shift, root, tail);
+	}
+
+	/**
+	 * Walks the arrays of the tree in order, rather than looking up each index.
+	 */
+	@Override
+	public Iterator<PaintCommand> iterator() {
+		return new Iterator<PaintCommand>() {
+			private int i = 0;
+			private Object[] array = size > 0 ? arrayFor(0) : null;
+
+			public boolean hasNext() {
+				return i < size;
+			}
+
+			public PaintCommand next() {
+				if (i >= size) throw new NoSuchElementException();
+				if (i > 0 && (i & MASK) == 0) array = arrayFor(i);
+				return (PaintCommand) array[i++ & MASK];
+			}
+		};
+	}
+
+	/**
+	 * @return the index of the first command in the tail
+	 */
+	private int tailOffset() {
+		return this.size < WIDTH ? 0 : ((this.size - 1) >>> BITS) << BITS;
+	}
+
+	/**
+	 * @return the array holding the command at index i
+	 */
+	private Object[] arrayFor(int i) {
+		if (i >= this.tailOffset()) return this.tail;
+		Object[] node = this.root;
+		for (int level = this.shift; level > 0; level -= BITS) {
+			node = (Object[]) node[(i >>> level) & MASK];
+		}
+		return node;
+	}
+
+	/**
+	 * @param tail
+	 * @return this, whose tail is full, with its tail moved into the tree and the given tail after it
+	 */
+	private CommandVector withTail(Object[] tail) {
+		Object[] root;
+		int shift = this.shift;
+		if ((this.size >>> BITS) > (1 << this.shift)) {
+			// The tree is full, grow it a level
+			root = new Object[WIDTH];
+			root[0] = this.root;
+			root[1] = newPath(this.shift, this.tail);
+			shift += BITS;
+		} else {
+			root = this.pushTail(this.shift, this.root, this.tail);
+		}
+		return new CommandVector(this.size + tail.length, shift, root, tail);
+	}
+
+	/**
+	 * @return a copy of the path of parent, at level, leading to the current tail, with node put in place of the tail
+	 */
+	private Object[] pushTail(int level, Object[] parent, Object[] node) {
+		int index = ((this.size - 1) >>> level) & MASK;
+		Object[] result = parent.clone();
+		if (level == BITS) {
+			result[index] = node;
+		} else {
+			Object[] child = (Object[]) parent[index];
+			result[index] = child != null ? this.pushTail(level - BITS, child, node) : newPath(level - BITS, node);
+		}
+		return result;
+	}
+
+	/**
+	 * @return a copy of the path of node, at level, leading to the last array of the tree,
+	 * without that array, or null if nothing is left
+	 */
+	private Object[] popTail(int level, Object[] node) {
+		int index = ((this.size - 2) >>> level) & MASK;
+		if (level > BITS) {
+			Object[] child = this.popTail(level - BITS, (Object[]) node[index]);
+			if (child == null && index == 0) return null;
+			Object[] result = node.clone();
+			result[index] = child;
+			return result;
+		}
+		if (index == 0) return null;
+		Object[] result = node.clone();
+		result[index] = null;
+		return result;
+	}
+
+	/**
+	 * @return node, under as many single child arrays as it takes to reach level
+	 */
+	private static Object[] newPath(int level, Object[] node) {
+		if (level == 0) return node;
+		Object[] result = new Object[WIDTH];
+		result[0] = newPath(level - BITS, node);
+		return result;
+	}
+}
@@ -0,0 +1,123 @@
+package ca.utoronto.utm.paint;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RESPONDS-TO CommandVector
+ *
+ */
+public class CommandVectorTest {
+
+	/**
+	 * Sizes either side of the tail filling, and of the tree growing a level:
+	 * 32 in the tail, then 32*32 more in a one level tree, then 32*32*32.
+	 */
+	private static final int[] BOUNDARIES = { 0, 1, 31, 32, 33, 63, 64, 65, 1055, 1056, 1057, 1088, 1089, 32799, 32800, 32801, 32832, 32833 };
+	private static final int LARGEST = 32833;
+
+	private List<PaintCommand> commands(int n) {
+		List<PaintCommand> commands = new ArrayList<PaintCommand>(n);
+		for (int i = 0; i < n; i++) {
+			commands.add(new CircleCommand(new Point(i, 0), 1));
+		}
+		return commands;
+	}
+
+	/**
+	 * Check that vector holds the first vector.size() of expected, by index and by iterator.
+	 */
+	private void assertHolds(String message, List<PaintCommand> expected, CommandVector vector, int size) {
+		assertEquals(message + ": size", size, vector.size());
+		for (int i = 0; i < size; i++) {
+			assertSame(message + ": get " + i, expected.get(i), vector.get(i));
+		}
+		Iterator<PaintCommand> it = vector.iterator();
+		for (int i = 0; i < size; i++) {
+			assertSame(message + ": next " + i, expected.get(i), it.next());
+		}
+		assertFalse(message + ": no more", it.hasNext());
+	}
+
+	@Test
+	public void plusThenMinusLast() {
+		List<PaintCommand> expected = this.commands(LARGEST);
+		Map<Integer, CommandVector> snapshots = new HashMap<Integer, CommandVector>();
+		CommandVector vector = CommandVector.EMPTY;
+		int b = 0;
+		for (int size = 0; ; size++) {
+			if (size == BOUNDARIES[b]) {
+				this.assertHolds("Grown to " + size, expected, vector, size);
+				snapshots.put(size, vector);
+				b++;
+			}
+			if (size == LARGEST) break;
+			vector = vector.plus(expected.get(size));
+		}
+		for (int size = LARGEST; size > 0; size--) {
+			vector = vector.minusLast();
+			if (snapshots.containsKey(size - 1)) {
+				this.assertHolds("Shrunk to " + (size - 1), expected, vector, size - 1);
+			}
+		}
+		assertSame("Back to empty", CommandVector.EMPTY, vector);
+		for (int size : BOUNDARIES) {
+			this.assertHolds("Snapshot of " + size, expected, snapshots.get(size), size);
+		}
+	}
+
+	@Test
+	public void of() {
+		List<PaintCommand> expected = this.commands(LARGEST);
+		for (int size : BOUNDARIES) {
+			CommandVector vector = CommandVector.of(expected.subList(0, size));
+			this.assertHolds("Of " + size, expected, vector, size);
+			if (size > 0) {
+				this.assertHolds("Of " + size + " then minusLast", expected, vector.minusLast(), size - 1);
+			}
+			PaintCommand extra = new RectangleCommand(new Point(0, 0), new Point(1, 1));
+			CommandVector plus = vector.plus(extra);
+			assertSame("Of " + size + " then plus", extra, plus.get(size));
+			this.assertHolds("Of " + size + " unchanged by plus", expected, vector, size);
+		}
+	}
+
+	@Test
+	public void branchesAreIndependent() {
+		List<PaintCommand> expected = this.commands(LARGEST);
+		for (int size : BOUNDARIES) {
+			if (size == 0) continue;
+			CommandVector base = CommandVector.of(expected.subList(0, size));
+			PaintCommand a = new CircleCommand(new Point(-1, 0), 1), b = new CircleCommand(new Point(-2, 0), 1);
+			// Replace the last command two ways, as undo then a new command does
+			CommandVector first = base.minusLast().plus(a), second = base.minusLast().plus(b);
+			assertSame("Branch a at " + size, a, first.get(size - 1));
+			assertSame("Branch b at " + size, b, second.get(size - 1));
+			this.assertHolds("Base at " + size, expected, base, size);
+			this.assertHolds("Branch a shares the rest at " + size, expected, first.minusLast(), size - 1);
+		}
+	}
+
+	@Test
+	public void outOfBounds() {
+		CommandVector vector = CommandVector.of(this.commands(33));
+		try {
+			vector.get(33);
+			fail("get past the end");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			CommandVector.EMPTY.minusLast();
+			fail("minusLast of empty");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+}
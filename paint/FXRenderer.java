@@ -0,0 +1,23 @@
+package ca.utoronto.utm.paint;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+/**
+ * IS-A Renderer drawing on a JavaFX GraphicsContext, such as that of the canvas in a PaintPanel.
+ */
+public class FXRenderer implements Renderer {
+	private GraphicsContext g;
+
+	public FXRenderer(GraphicsContext g) {
+		this.g = g;
+	}
+
+	public void setFill(Color color) { g.setFill(color); }
+	public void setStroke(Color color) { g.setStroke(color); }
+	public void fillOval(double x, double y, double w, double h) { g.fillOval(x, y, w, h); }
+	public void strokeOval(double x, double y, double w, double h) { g.strokeOval(x, y, w, h); }
+	public void fillRect(double x, double y, double w, double h) { g.fillRect(x, y, w, h); }
+	public void strokeRect(double x, double y, double w, double h) { g.strokeRect(x, y, w, h); }
+	public void strokePolyline(double[] xs, double[] ys, int n) { g.strokePolyline(xs, ys, n); }
+}
@@ -0,0 +1,240 @@
+package ca.utoronto.utm.paint;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * The undo and redo stacks of a PaintModel. Each Edit is a small delta: the
+ * command that was added, the list that was replaced, or the few ints a
+ * command was before one of its setters changed it. Undoing or redoing an
+ * Edit takes constant time, and applies the inverse delta to the model, which
+ * tells its observers only about the area that changed.
+ *
+ * The Edits held are limited to a memory budget, once it is exceeded the oldest
+ * are forgotten.
+ * RESPONDS-TO PaintModel
+ */
+class History {
+	/**
+	 * Default memory budget, in (estimated) bytes
+	 */
+	static final long DEFAULT_BUDGET = 8L << 20;
+
+	/**
+	 * A change to a PaintModel that can be undone and then redone.
+	 */
+	static abstract class Edit {
+		abstract void undo(PaintModel model);
+		abstract void redo(PaintModel model);
+		/**
+		 * @return roughly how many bytes this keeps alive, the same every time it is asked
+		 */
+		abstract long cost();
+	}
+
+	/**
+	 * command was added on top of the others
+	 */
+	static class AddEdit extends Edit {
+		private PaintCommand command;
+
+		AddEdit(PaintCommand command) {
+			this.command = command;
+		}
+		void undo(PaintModel model) {
+			model.removeLast(this.command);
+		}
+		void redo(PaintModel model) {
+			model.append(this.command);
+		}
+		long cost() {
+			return 32;
+		}
+	}
+
+	/**
+	 * commands were added, in order, on top of the others, as by PaintModel.addCommands
+	 */
+	static class AddAllEdit extends Edit {
+		private List<PaintCommand> commands;
+
+		AddAllEdit(List<PaintCommand> commands) {
+			this.commands = commands;
+		}
+		void undo(PaintModel model) {
+			for (int i = this.commands.size() - 1; i >= 0; i--) {
+				model.removeLast(this.commands.get(i));
+			}
+		}
+		void redo(PaintModel model) {
+			for (PaintCommand c : this.commands) {
+				model.append(c);
+			}
+		}
+		long cost() {
+			return 32 + 8L * this.commands.size();
+		}
+	}
+
+	/**
+	 * commands, which were at positions in the list of the model, were removed,
+	 * as by PaintModel.removeCommands. orders are their places in the z order
+	 * of the spatial index, so undo puts them back exactly where they were.
+	 */
+	static class RemoveEdit extends Edit {
+		private PaintCommand[] commands;
+		private int[] positions; // ascending
+		private long[] orders;
+
+		RemoveEdit(PaintCommand[] commands, int[] positions, long[] orders) {
+			this.commands = commands;
+			this.positions = positions;
+			this.orders = orders;
+		}
+		void undo(PaintModel model) {
+			model.restore(this.commands, this.positions, this.orders);
+		}
+		void redo(PaintModel model) {
+			this.orders = model.remove(this.commands, this.positions);
+		}
+		long cost() {
+			return 32 + 24L * this.commands.length;
+		}
+	}
+
+	/**
+	 * The commands of the model were replaced, as by PaintModel.reset. This keeps
+	 * the other list and its index, so undo and redo simply swap them back in.
+	 */
+	static class ReplaceEdit extends Edit {
+		private CommandVector commands;
+		private SpatialIndex index;
+		private long cost;
+
+		ReplaceEdit(CommandVector commands, SpatialIndex index) {
+			this.commands = commands;
+			this.index = index;
+			this.cost = 32 + 64L * commands.size();
+		}
+		void undo(PaintModel model) {
+			this.swap(model);
+		}
+		void redo(PaintModel model) {
+			this.swap(model);
+		}
+		private void swap(PaintModel model) {
+			CommandVector commands = model.getCommandVector();
+			SpatialIndex index = model.getIndex();
+			model.replace(this.commands, this.index);
+			this.commands = commands;
+			this.index = index;
+		}
+		long cost() {
+			return this.cost; // fixed, so used stays consistent as the lists swap
+		}
+	}
+
+	/**
+	 * One of the setters of command changed it, state is what it was before,
+	 * see PaintCommand.getState. Undo and redo swap state with the current one.
+	 */
+	static class StateEdit extends Edit {
+		private PaintCommand command;
+		private int[] state;
+
+		StateEdit(PaintCommand command, int[] state) {
+			this.command = command;
+			this.state = state;
+		}
+		void undo(PaintModel model) {
+			int[] current = this.command.getState();
+			this.command.setState(this.state);
+			this.state = current;
+		}
+		void redo(PaintModel model) {
+			this.undo(model);
+		}
+		long cost() {
+			return 32 + 4L * 8; // states are a handful of ints
+		}
+	}
+
+	private ArrayDeque<Edit> undos = new ArrayDeque<Edit>(); // most recent last
+	private ArrayDeque<Edit> redos = new ArrayDeque<Edit>(); // most recently undone last
+	private long budget;
+	private long used; // sum of cost of undos and redos
+	private boolean replaying; // undoing or redoing, so changes are not recorded
+
+	History() {
+		this(DEFAULT_BUDGET);
+	}
+
+	/**
+	 * @param budget roughly how many bytes of Edits to keep
+	 */
+	History(long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Remember edit, which was just applied, as the one to undo next. This
+	 * forgets anything that could be redone.
+	 * @param edit
+	 */
+	void record(Edit edit) {
+		if (this.replaying) return;
+		for (Edit e : this.redos) this.used -= e.cost();
+		this.redos.clear();
+		this.undos.addLast(edit);
+		this.used += edit.cost();
+		while (this.used > this.budget && this.undos.size() > 1) {
+			this.used -= this.undos.removeFirst().cost();
+		}
+	}
+
+	boolean canUndo() {
+		return !this.undos.isEmpty();
+	}
+
+	boolean canRedo() {
+		return !this.redos.isEmpty();
+	}
+
+	/**
+	 * @return whether an edit of model was undone
+	 */
+	boolean undo(PaintModel model) {
+		if (this.undos.isEmpty()) return false;
+		Edit edit = this.undos.removeLast();
+		this.replay(edit, model, true);
+		this.redos.addLast(edit);
+		return true;
+	}
+
+	/**
+	 * @return whether an edit of model was redone
+	 */
+	boolean redo(PaintModel model) {
+		if (this.redos.isEmpty()) return false;
+		Edit edit = this.redos.removeLast();
+		this.replay(edit, model, false);
+		this.undos.addLast(edit);
+		return true;
+	}
+
+	private void replay(Edit edit, PaintModel model, boolean undo) {
+		this.replaying = true;
+		try {
+			if (undo) edit.undo(model);
+			else edit.redo(model);
+		} finally {
+			this.replaying = false;
+		}
+	}
+
+	void clear() {
+		this.undos.clear();
+		this.redos.clear();
+		this.used = 0;
+	}
+}
@@ -0,0 +1,121 @@
+package ca.utoronto.utm.paint;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+
+import javafx.scene.paint.Color;
+
+/**
+ * A squiggle of a file parsed lazily, see PaintFileParser.setLazy. Only where
+ * its points are in the mapped file, and their extent, are kept. The points
+ * are read when the squiggle is drawn or saved, and held softly, so the
+ * garbage collector drops those of squiggles out of view when memory runs low.
+ * Its points cannot be added to, only its color and fill changed.
+ * If the points cannot be read back as they were indexed, the file has changed,
+ * and this is broken: it draws nothing, and cannot be saved.
+ * IS-A PaintCommand
+ */
+class LazySquiggleCommand extends PaintCommand {
+	private ByteBuffer source; // the mapped file
+	private int from, to; // the point lines in source
+	private Rect extent;
+	private SoftReference<SquiggleCommand> squiggle = new SoftReference<SquiggleCommand>(null);
+	private boolean broken; // see isBroken
+
+	/**
+	 * @param color
+	 * @param fill
+	 * @param source the mapped file
+	 * @param from the index in source of the first point line
+	 * @param to the index in source just past the last point line
+	 * @param extent the bounds of the points
+	 */
+	LazySquiggleCommand(Color color, boolean fill, ByteBuffer source, int from, int to, Rect extent) {
+		super(color, fill);
+		this.source = source;
+		this.from = from;
+		this.to = to;
+		this.extent = extent;
+	}
+
+	/**
+	 * @return the points of this, read from the file unless still held, as a
+	 * detached squiggle the color and fill of this. Do not keep it.
+	 * Synchronized, as a save may read this while it is drawn.
+	 */
+	synchronized SquiggleCommand getSquiggle() {
+		SquiggleCommand s = this.squiggle.get();
+		if (s == null) {
+			s = new SquiggleCommand(this.getColor(), this.fill);
+			if (this.broken || !PaintFileParser.readPoints(this.source, this.from, this.to, s) || !sameArea(s.getBounds(), this.extent)) {
+				this.broken = true;
+				s = new SquiggleCommand(this.getColor(), this.fill); // none of it, rather than what could be read
+			}
+			s.trimToSize();
+			this.squiggle = new SoftReference<SquiggleCommand>(s);
+		} else if (s.r != this.r || s.g != this.g || s.b != this.b || s.fill != this.fill) {
+			s.restoreState(this.newState(2));
+		}
+		return s;
+	}
+
+	/**
+	 * @return whether the points of this could not be read back from the file, which has changed
+	 */
+	synchronized boolean isBroken() {
+		this.getSquiggle();
+		return this.broken;
+	}
+
+	private static boolean sameArea(Rect a, Rect b) {
+		return a.left == b.left && a.top == b.top && a.right == b.right && a.bottom == b.bottom;
+	}
+
+	/**
+	 * @throws IOException if this is broken, rather than save part of it, or nothing
+	 */
+	private synchronized SquiggleCommand getSavedSquiggle() throws IOException {
+		SquiggleCommand s = this.getSquiggle();
+		if (this.broken) throw new IOException("The points of a squiggle could not be read back, the file it was opened from has changed");
+		return s;
+	}
+
+	protected Rect computeBounds() {
+		return this.extent;
+	}
+
+	protected boolean hits(int x, int y, int tolerance) {
+		return this.getSquiggle().hits(x, y, tolerance);
+	}
+
+	/**
+	 * Shares the mapped file with this, its points are read when needed too
+	 */
+	PaintCommand copy() {
+		return new LazySquiggleCommand(this.getColor(), this.fill, this.source, this.from, this.to, this.extent);
+	}
+
+	int[] getState() {
+		return this.newState(2);
+	}
+
+	void setState(int[] state) {
+		Rect before = this.getBounds();
+		this.restoreState(state);
+		this.changed(before);
+	}
+
+	@Override
+	public void execute(Renderer g) {
+		this.getSquiggle().execute(g);
+	}
+
+	public void write(PaintBinaryWriter out) throws IOException {
+		this.getSavedSquiggle().write(out);
+	}
+
+	public void print(Appendable out) throws IOException {
+		this.getSavedSquiggle().print(out);
+	}
+}
@@ -0,0 +1,65 @@
+package ca.utoronto.utm.paint;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import javafx.scene.paint.Color;
+
+/**
+ * RESPONDS-TO LazySquiggleCommand
+ *
+ */
+public class LazySquiggleCommandTest {
+
+	private static final String POINTS = "\t\tpoint:(1,2)\n\t\tpoint:(30,-4)\n\t\tpoint:(5,60)\n";
+	private static final Rect EXTENT = Rect.around(1, -4, 30, 60);
+
+	private LazySquiggleCommand squiggle(String text, int to) {
+		ByteBuffer source = ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+		return new LazySquiggleCommand(Color.RED, false, source, 0, to, EXTENT);
+	}
+
+	private void assertBroken(String message, LazySquiggleCommand squiggle) {
+		assertTrue(message + ": broken", squiggle.isBroken());
+		assertEquals(message + ": draws nothing", 0, squiggle.getSquiggle().size());
+		assertFalse(message + ": is not hit", squiggle.hitTest(1, 2, 3));
+		try {
+			squiggle.print(new StringBuilder());
+			fail(message + ": saved");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void readsPoints() throws IOException {
+		LazySquiggleCommand squiggle = this.squiggle(POINTS, POINTS.length());
+		assertFalse("Not broken", squiggle.isBroken());
+		SquiggleCommand points = squiggle.getSquiggle();
+		assertEquals("All the points", 3, points.size());
+		assertEquals("Last x", 5, points.getX(2));
+		assertEquals("Last y", 60, points.getY(2));
+		assertTrue("Prints", squiggle.print().contains("point:(30,-4)"));
+	}
+
+	@Test
+	public void shortWindow() {
+		// Cut off in the middle of the last point
+		this.assertBroken("Short", this.squiggle(POINTS, POINTS.length() - 5));
+	}
+
+	@Test
+	public void missingPoint() {
+		// Whole lines, but not the ones indexed
+		this.assertBroken("Missing point", this.squiggle(POINTS, POINTS.indexOf("\t\tpoint:(5")));
+	}
+
+	@Test
+	public void changedFile() {
+		this.assertBroken("Changed", this.squiggle(POINTS.replace("point:(30", "point:(3x"), POINTS.length()));
+	}
+}
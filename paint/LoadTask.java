@@ -0,0 +1,52 @@
+package ca.utoronto.utm.paint;
+
+import java.io.File;
+import java.io.IOException;
+
+import javafx.concurrent.Task;
+
+/**
+ * Opens a Version 2.0 (binary) Paint Save File on a background thread, text
+ * files are streamed in by StreamLoadTask instead. Progress
+ * is reported in bytes parsed, and cancelling the task stops the parse. The
+ * value of the task is a new PaintModel holding the file's commands, ready to
+ * be handed to View.setPaintModel on the JavaFX application thread.
+ * RESPONDS-TO View
+ */
+public class LoadTask extends Task<PaintModel> {
+	private File file;
+
+	/**
+	 * @param file the file to open
+	 */
+	public LoadTask(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * @return the file being opened
+	 */
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * @return the model holding the commands of the file, or null if cancelled
+	 * @throws IOException with the parser's error message if the file could not be parsed
+	 */
+	@Override
+	protected PaintModel call() throws IOException {
+		PaintModel paintModel = new PaintModel();
+		Progress progress = (done, total) -> {
+			this.updateProgress(done, total);
+			return !this.isCancelled();
+		};
+		this.updateMessage("Opening " + this.file.getName());
+		PaintBinaryFileParser parser = new PaintBinaryFileParser();
+		parser.setProgress(progress);
+		parser.parse(this.file, paintModel);
+		if (this.isCancelled()) return null;
+		if (paintModel.getError()) throw new IOException(paintModel.getErrorMessage());
+		return paintModel;
+	}
+}
@@ -0,0 +1,216 @@
+package ca.utoronto.utm.paint;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+import javafx.scene.paint.Color;
+
+/**
+ * Parse a file in the Version 2.0 (binary) Paint Save File format, see
+ * paintSaveFileFormatV2.txt and PaintBinaryWriter. Like PaintFileParser,
+ * after a successful parse the commands are set in the paint model, otherwise
+ * the error is stored in this and in the paint model.
+ * RESPONDS-TO View
+ */
+public class PaintBinaryFileParser {
+	private String errorMessage = ""; // error encountered during parse
+	private PaintModel paintModel;
+	private ByteBuffer buffer;
+	private Progress progress; // told how parse is going, may be null
+
+	/**
+	 * How many bytes are read between progress reports
+	 */
+	private static final int PROGRESS_STEP = 1 << 20;
+
+	/**
+	 * @param file
+	 * @return whether file starts like a Version 2.0 Paint Save File
+	 */
+	public static boolean isBinary(File file) {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer start = ByteBuffer.allocate(PaintBinaryWriter.MAGIC.length);
+			while (start.hasRemaining() && channel.read(start) != -1);
+			return !start.hasRemaining() && start.flip().equals(ByteBuffer.wrap(PaintBinaryWriter.MAGIC));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Store an appropriate error message in this, including the offset in the file
+	 * where the error occurred, and set this error in the paint model.
+	 * @param mesg
+	 */
+	private void error(String mesg) {
+		this.errorMessage = "Error at byte " + this.buffer.position() + " " + mesg;
+		this.paintModel.setError(this.errorMessage, true);
+	}
+
+	/**
+	 *
+	 * @return the error message resulting from an unsuccessful parse
+	 */
+	public String getErrorMessage() {
+		return this.errorMessage;
+	}
+
+	/**
+	 * @param progress told, in bytes, how far parse has got, and able to cancel it. null for no reports.
+	 */
+	void setProgress(Progress progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Parse file as a Version 2.0 Paint Save File.
+	 * @param file the file to parse
+	 * @param paintModel the paint model to add the commands to
+	 * @return whether the complete file was successfully parsed
+	 */
+	public boolean parse(File file, PaintModel paintModel) {
+		this.paintModel = paintModel;
+		this.errorMessage = "";
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				this.buffer = ByteBuffer.allocate(0);
+				error("File is too large");
+				return false;
+			}
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return this.parse(mapped, paintModel);
+		} catch (IOException e) {
+			this.buffer = ByteBuffer.allocate(0);
+			error("Could not read file: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Parse the bytes of buffer, from its position to its limit, as a Version 2.0 Paint Save File.
+	 * @param buffer
+	 * @param paintModel the paint model to add the commands to
+	 * @return whether the complete file was successfully parsed
+	 */
+	public boolean parse(ByteBuffer buffer, PaintModel paintModel) {
+		this.paintModel = paintModel;
+		this.errorMessage = "";
+		this.buffer = buffer;
+		ArrayList<PaintCommand> temp = new ArrayList<PaintCommand>();
+		try {
+			for (byte b : PaintBinaryWriter.MAGIC) {
+				if (buffer.get() != b) {
+					error("Expected Start of Paint Save File Version 2.0");
+					return false;
+				}
+			}
+			int flags = buffer.get() & 0xff;
+			int recordsStart = buffer.position();
+			int nextReport = PROGRESS_STEP;
+			while (true) {
+				if (this.progress != null && buffer.position() >= nextReport) {
+					nextReport = buffer.position() + PROGRESS_STEP;
+					if (!this.progress.update(buffer.position(), buffer.limit())) {
+						this.errorMessage = "Cancelled";
+						this.paintModel.setError(this.errorMessage, true);
+						return false;
+					}
+				}
+				int tag = buffer.get() & 0xff;
+				int type = tag & ~PaintBinaryWriter.FILLED;
+				if (type == PaintBinaryWriter.END) break;
+				if (type != PaintBinaryWriter.CIRCLE && type != PaintBinaryWriter.RECTANGLE && type != PaintBinaryWriter.SQUIGGLE) {
+					buffer.position(buffer.position() - 1);
+					error("Unknown shape " + type);
+					return false;
+				}
+				PaintCommand command;
+				Color color = Color.rgb(buffer.get() & 0xff, buffer.get() & 0xff, buffer.get() & 0xff);
+				boolean fill = (tag & PaintBinaryWriter.FILLED) != 0;
+				// Built detached, see PaintCommand.setModel, so the setters only set
+				switch (type) {
+				case PaintBinaryWriter.CIRCLE:
+					CircleCommand circle = new CircleCommand(color, fill);
+					circle.setCentre(new Point(readInt(), readInt()));
+					int radius = readInt();
+					if (radius < 0) throw new NumberFormatException("Negative radius"); // as in Version 1.0
+					circle.setRadius(radius);
+					command = circle;
+					break;
+				case PaintBinaryWriter.RECTANGLE:
+					RectangleCommand rectangle = new RectangleCommand(color, fill);
+					rectangle.setP1(new Point(readInt(), readInt()));
+					rectangle.setP2(new Point(readInt(), readInt()));
+					command = rectangle;
+					break;
+				default:
+					SquiggleCommand squiggle = new SquiggleCommand(color, fill);
+					int n = readUnsigned();
+					if (n < 0) throw new NumberFormatException("Too many points");
+					int x = 0, y = 0;
+					for (int i = 0; i < n; i++) {
+						// Wraps around, as the difference wrapped when written
+						x += readInt();
+						y += readInt();
+						squiggle.add(x, y);
+					}
+					squiggle.trimToSize();
+					command = squiggle;
+					break;
+				}
+				temp.add(command);
+			}
+			if ((flags & PaintBinaryWriter.FLAG_CHECKSUM) != 0) {
+				int recordsEnd = buffer.position();
+				long expected = buffer.getInt() & 0xffffffffL;
+				CRC32 crc = new CRC32();
+				crc.update(buffer.duplicate().position(recordsStart).limit(recordsEnd));
+				if (crc.getValue() != expected) {
+					error("Checksum does not match, the file is damaged");
+					return false;
+				}
+			}
+			if (buffer.hasRemaining()) {
+				error("Improper format, data after end of file");
+				return false;
+			}
+		} catch (BufferUnderflowException e) {
+			error("Unexpected end of file");
+			return false;
+		} catch (NumberFormatException e) {
+			error(e.getMessage());
+			return false;
+		}
+		this.paintModel.setError("", false);
+		this.paintModel.setCommands(temp);
+		return true;
+	}
+
+	/**
+	 * Read an int written by PaintBinaryWriter.writeInt
+	 */
+	private int readInt() {
+		int v = readUnsigned();
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	/**
+	 * Read a varint written by PaintBinaryWriter.writeUnsigned
+	 */
+	private int readUnsigned() {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = this.buffer.get() & 0xff;
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new NumberFormatException("Number too long");
+	}
+}
@@ -0,0 +1,118 @@
+package ca.utoronto.utm.paint;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javafx.scene.paint.Color;
+
+/**
+ * RESPONDS-TO PaintBinaryFileParser
+ *
+ */
+public class PaintBinaryFileParserTest {
+
+	private PaintModel drawing() {
+		PaintModel paintModel = new PaintModel();
+		paintModel.addCommand(new CircleCommand(new Point(-40, 25), 10));
+		RectangleCommand rectangle = new RectangleCommand(new Point(-5, -6), new Point(7, -8));
+		rectangle.setColor(Color.rgb(12, 34, 56));
+		rectangle.setFill(true);
+		paintModel.addCommand(rectangle);
+		SquiggleCommand squiggle = new SquiggleCommand();
+		squiggle.add(-1, -2);
+		squiggle.add(3, -4);
+		squiggle.add(Integer.MAX_VALUE, Integer.MIN_VALUE);
+		paintModel.addCommand(squiggle);
+		return paintModel;
+	}
+
+	private byte[] saveBinary(PaintModel paintModel) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		paintModel.saveBinary(out);
+		return out.toByteArray();
+	}
+
+	private String save(PaintModel paintModel) {
+		StringWriter s = new StringWriter();
+		paintModel.save(new PrintWriter(s));
+		return s.toString();
+	}
+
+	private void doParserErrorCase(byte[] bytes, String message, String expected) {
+		PaintBinaryFileParser parser = new PaintBinaryFileParser();
+		PaintModel paintModel = new PaintModel();
+		assertFalse(message + ": Returns false", parser.parse(ByteBuffer.wrap(bytes), paintModel));
+		assertTrue(message + ": " + parser.getErrorMessage(), parser.getErrorMessage().contains(expected));
+		assertTrue(message + ": Nothing added", paintModel.getCommands().isEmpty());
+	}
+
+	private void doRoundTrip(PaintModel paintModel, String message) throws IOException {
+		PaintBinaryFileParser parser = new PaintBinaryFileParser();
+		PaintModel reopened = new PaintModel();
+		assertTrue(message + ": " + parser.getErrorMessage(), parser.parse(ByteBuffer.wrap(this.saveBinary(paintModel)), reopened));
+		assertEquals(message + ": Same drawing", this.save(paintModel), this.save(reopened));
+	}
+
+	@Test
+	public void writeThenRead() throws IOException {
+		PaintModel paintModel = this.drawing();
+		PaintBinaryFileParser parser = new PaintBinaryFileParser();
+		PaintModel reopened = new PaintModel();
+		assertTrue("Reads its own save file", parser.parse(ByteBuffer.wrap(this.saveBinary(paintModel)), reopened));
+		assertEquals("No error message", "", parser.getErrorMessage());
+		assertEquals("Same drawing", this.save(paintModel), this.save(reopened));
+	}
+
+	@Test
+	public void truncated() throws IOException {
+		byte[] bytes = this.saveBinary(this.drawing());
+		for (int length = 0; length < bytes.length; length++) {
+			this.doParserErrorCase(Arrays.copyOf(bytes, length), "Truncated to " + length, "Unexpected end of file");
+		}
+	}
+
+	@Test
+	public void checksumMismatch() throws IOException {
+		byte[] bytes = this.saveBinary(this.drawing());
+		bytes[6] ^= 1; // red of the circle, still a well formed file
+		this.doParserErrorCase(bytes, "Damaged", "Checksum does not match");
+	}
+
+	@Test
+	public void negativeRadius() {
+		byte[] bytes = { 'P', 'S', 'F', '2', 0, PaintBinaryWriter.CIRCLE, 0, 0, 0, 0, 0, 1 /* -1 */, PaintBinaryWriter.END };
+		this.doParserErrorCase(bytes, "Negative radius", "Negative radius");
+	}
+
+	@Test
+	public void squiggleFarApart() throws IOException {
+		// Differences overflow an int, as they do in the writer
+		PaintModel paintModel = new PaintModel();
+		SquiggleCommand squiggle = new SquiggleCommand();
+		squiggle.add(-2000000000, 0);
+		squiggle.add(2000000000, 0);
+		squiggle.add(-2000000000, 2000000000);
+		paintModel.addCommand(squiggle);
+		this.doRoundTrip(paintModel, "Far apart");
+	}
+
+	@Test
+	public void extremeCoordinates() throws IOException {
+		PaintModel paintModel = new PaintModel();
+		paintModel.addCommand(new CircleCommand(new Point(Integer.MIN_VALUE, Integer.MAX_VALUE), Integer.MAX_VALUE));
+		paintModel.addCommand(new RectangleCommand(new Point(Integer.MIN_VALUE, Integer.MIN_VALUE), new Point(Integer.MAX_VALUE, Integer.MAX_VALUE)));
+		SquiggleCommand squiggle = new SquiggleCommand();
+		squiggle.add(Integer.MIN_VALUE, Integer.MAX_VALUE);
+		squiggle.add(Integer.MAX_VALUE, Integer.MIN_VALUE);
+		squiggle.add(Integer.MIN_VALUE, Integer.MIN_VALUE);
+		paintModel.addCommand(squiggle);
+		this.doRoundTrip(paintModel, "Extremes");
+	}
+}
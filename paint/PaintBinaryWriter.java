@@ -0,0 +1,120 @@
+package ca.utoronto.utm.paint;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Writes PaintCommands in the Version 2.0 (binary) Paint Save File format,
+ * see paintSaveFileFormatV2.txt. Each PaintCommand writes its own record
+ * through the methods below, just as it prints itself in the Version 1.0 format.
+ * RESPONDS-TO PaintModel
+ */
+public class PaintBinaryWriter {
+	static final byte[] MAGIC = { 'P', 'S', 'F', '2' };
+	static final int FLAG_CHECKSUM = 1;
+
+	/**
+	 * Record tags, the high bit of a tag is set for a filled shape
+	 */
+	static final int END = 0;
+	static final int CIRCLE = 1;
+	static final int RECTANGLE = 2;
+	static final int SQUIGGLE = 3;
+	static final int FILLED = 0x80;
+
+	private OutputStream out;
+	private CRC32 crc; // of the records, null if the file has no checksum
+
+	/**
+	 * @param out where to write, it is buffered by this
+	 * @param checksum whether to end the file with a CRC32 of its records
+	 */
+	public PaintBinaryWriter(OutputStream out, boolean checksum) {
+		this.out = new BufferedOutputStream(out, 1 << 16);
+		this.crc = checksum ? new CRC32() : null;
+	}
+
+	/**
+	 * Write a complete file containing commands, and flush it.
+	 * @param commands
+	 * @throws IOException
+	 */
+	public void write(List<PaintCommand> commands) throws IOException {
+		this.write(commands, null);
+	}
+
+	/**
+	 * Write a complete file containing commands, and flush it, unless progress cancels it.
+	 * @param commands
+	 * @param progress told, in commands, how far the write has got. null for no reports.
+	 * @return false if progress cancelled the write, the file is then incomplete
+	 * @throws IOException
+	 */
+	boolean write(List<PaintCommand> commands, Progress progress) throws IOException {
+		this.out.write(MAGIC);
+		this.out.write(this.crc != null ? FLAG_CHECKSUM : 0);
+		int done = 0, total = commands.size();
+		for (PaintCommand c : commands) {
+			c.write(this);
+			done++;
+			if (progress != null && (done & 0x3ff) == 0 && !progress.update(done, total)) return false;
+		}
+		this.writeByte(END);
+		if (this.crc != null) {
+			long value = this.crc.getValue();
+			for (int shift = 24; shift >= 0; shift -= 8) {
+				this.out.write((int) (value >>> shift));
+			}
+		}
+		this.out.flush();
+		return true;
+	}
+
+	/**
+	 * Start the record for a shape.
+	 * @param type one of CIRCLE, RECTANGLE or SQUIGGLE
+	 * @param fill
+	 * @param r
+	 * @param g
+	 * @param b
+	 * @throws IOException
+	 */
+	void writeShape(int type, boolean fill, int r, int g, int b) throws IOException {
+		this.writeByte(fill ? type | FILLED : type);
+		this.writeByte(r);
+		this.writeByte(g);
+		this.writeByte(b);
+	}
+
+	/**
+	 * Write a signed int as a zig-zag encoded varint, so small values
+	 * of either sign take one byte.
+	 * @param value
+	 * @throws IOException
+	 */
+	void writeInt(int value) throws IOException {
+		this.writeUnsigned((value << 1) ^ (value >> 31));
+	}
+
+	/**
+	 * Write value, taken as unsigned, as a varint: 7 bits per byte, low bits first,
+	 * the high bit set on every byte but the last.
+	 * @param value
+	 * @throws IOException
+	 */
+	void writeUnsigned(int value) throws IOException {
+		while ((value & ~0x7f) != 0) {
+			this.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		this.writeByte(value);
+	}
+
+	private void writeByte(int b) throws IOException {
+		this.out.write(b);
+		if (this.crc != null) this.crc.update(b);
+	}
+}
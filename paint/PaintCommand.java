@@ -1,5 +1,7 @@
 package ca.utoronto.utm.paint;
-import java.util.Observable;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 
@@ -7,33 +9,164 @@ import javafx.scene.paint.Color;
  * @author Gagandeep Bhangal
  *
  */
-public abstract class PaintCommand extends Observable {
+public abstract class PaintCommand {
 	private Color color;
 	protected boolean fill;
 	protected int r, g, b;
+	private Rect bounds; // see getBounds, null until computed
+	private PaintModel model; // the model this is in, told about changes to this, null if none
 	
 	PaintCommand(){
-		// Pick a random color for this
-		this.r = (int)(Math.random()*256);
-		this.g = (int)(Math.random()*256);
-		this.b= (int)(Math.random()*256);
+		// Pick a random color for this. ThreadLocalRandom, as commands are
+		// built on several threads at once by ParallelPaintFileParser.
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		this.r = random.nextInt(256);
+		this.g = random.nextInt(256);
+		this.b = random.nextInt(256);
 		this.color = Color.rgb(r, g, b);
-		this.fill = (1==(int)(Math.random()*2));
+		this.fill = random.nextBoolean();
+	}
+	/**
+	 * For the parsers, which know the color and fill of a command before
+	 * building it, so none is picked at random only to be replaced.
+	 * @param color
+	 * @param fill
+	 */
+	PaintCommand(Color color, boolean fill){
+		this.setRGB(color);
+		this.fill = fill;
 	}
 	public Color getColor() {
 		return color;
 	}
 	public void setColor(Color color) {
+		Rect before = this.changing();
+		this.setRGB(color);
+		this.changed(before);
+	}
+	private void setRGB(Color color) {
 		this.color = color;
+		// Keep the saved components in step with the color actually drawn
+		this.r = (int)Math.round(color.getRed()*255);
+		this.g = (int)Math.round(color.getGreen()*255);
+		this.b = (int)Math.round(color.getBlue()*255);
 	}
 	public boolean isFill() {
 		return fill;
 	}
 	public void setFill(boolean fill) {
+		Rect before = this.changing();
 		this.fill = fill;
+		this.changed(before);
 	}
+	/**
+	 * @return this in the Version 1.0 save file format, see print(Appendable)
+	 */
 	public String print() {
-		return "";
+		StringBuilder s = new StringBuilder();
+		try {
+			this.print(s);
+		} catch (IOException e) {
+			// StringBuilder does not throw
+		}
+		return s.toString();
+	}
+	/**
+	 * Write this, in the Version 1.0 save file format, straight to out. The
+	 * last line is not terminated.
+	 * @param out
+	 * @throws IOException
+	 */
+	public abstract void print(Appendable out) throws IOException;
+	/**
+	 * Append the decimal digits of v to out, without building a String.
+	 * @param out
+	 * @param v
+	 * @throws IOException
+	 */
+	protected static void printInt(Appendable out, int v) throws IOException {
+		if (v < 0) out.append('-');
+		int n = v < 0 ? v : -v; // negative, so that Integer.MIN_VALUE fits
+		int divisor = 1;
+		while (n / divisor <= -10) divisor *= 10;
+		while (divisor > 0) {
+			out.append((char)('0' - n / divisor));
+			n %= divisor;
+			divisor /= 10;
+		}
+	}
+	/**
+	 * Write this as a record of the Version 2.0 (binary) save file format.
+	 * @param out
+	 * @throws IOException
+	 */
+	public abstract void write(PaintBinaryWriter out) throws IOException;
+
+	/**
+	 * @param model the model this is now in, null if it is in none.
+	 * A command in no model is detached: its setters tell no one and skip all
+	 * the bookkeeping for it, so building commands off the model, as the
+	 * parsers do before handing the lot to setCommands, costs nothing extra.
+	 */
+	void setModel(PaintModel model) {
+		this.model = model;
+	}
+	/**
+	 * Tell our model that this is about to change, so it can ask for getState before it does.
+	 * @return the bounds of this before the change, for changed. null if this is detached.
+	 */
+	protected Rect changing() {
+		if (this.model == null) return null;
+		this.model.commandChanging(this);
+		return this.getBounds();
+	}
+	/**
+	 * @return everything a setter of this can change, as a few ints, to hand back to setState.
+	 * Slots 0 and 1 hold the color and fill, the subclass adds its own.
+	 */
+	abstract int[] getState();
+	/**
+	 * Put this back in a state returned by getState, and tell our model.
+	 * @param state
+	 */
+	abstract void setState(int[] state);
+	/**
+	 * @param length
+	 * @return a state of the given length with the color and fill of this filled in
+	 */
+	int[] newState(int length) {
+		int[] state = new int[length];
+		state[0] = (r << 16) | (g << 8) | b;
+		state[1] = fill ? 1 : 0;
+		return state;
+	}
+	/**
+	 * Set the color and fill of this from state, without telling our model.
+	 * @param state
+	 */
+	void restoreState(int[] state) {
+		this.r = (state[0] >> 16) & 0xff;
+		this.g = (state[0] >> 8) & 0xff;
+		this.b = state[0] & 0xff;
+		this.color = Color.rgb(r, g, b);
+		this.fill = state[1] != 0;
+	}
+	/**
+	 * Tell our model that this has changed, the area to redraw is what this
+	 * covered before and after the change.
+	 * @param before the bounds of this before the change, null if this is detached
+	 */
+	protected void changed(Rect before) {
+		if (this.model == null) return;
+		this.changed(before, before.union(this.getBounds()));
+	}
+	/**
+	 * Tell our model that this has changed, and only dirty needs to be redrawn.
+	 * @param before the bounds of this before the change
+	 * @param dirty
+	 */
+	protected void changed(Rect before, Rect dirty) {
+		if (this.model != null) this.model.commandChanged(this, before, dirty);
 	}
 	public String toString(){
 		double r = this.color.getRed();
@@ -46,5 +179,56 @@ public abstract class PaintCommand extends Observable {
 		return s;
 	}
 	
-	public abstract void execute(GraphicsContext g);
+	/**
+	 * @return the area of the canvas this draws on, Rect.EMPTY if it draws nothing.
+	 * Used to cull and hit test, so it is kept rather than recomputed on each call.
+	 */
+	public Rect getBounds() {
+		Rect bounds = this.bounds;
+		if (bounds == null) this.bounds = bounds = this.computeBounds();
+		return bounds;
+	}
+	/**
+	 * @return the area of the canvas this draws on, worked out from its geometry
+	 */
+	protected abstract Rect computeBounds();
+	/**
+	 * The geometry of this has changed, getBounds has to be recomputed.
+	 */
+	protected void invalidateBounds() {
+		this.bounds = null;
+	}
+	/**
+	 * @param x
+	 * @param y
+	 * @param tolerance how far, in pixels, (x,y) may be from what this draws
+	 * @return whether (x,y) is on what this draws, give or take tolerance.
+	 * Checks the bounds of this first, so most misses cost next to nothing.
+	 */
+	public boolean hitTest(int x, int y, int tolerance) {
+		Rect bounds = this.getBounds();
+		if (x < (long) bounds.left - tolerance || x >= (long) bounds.right + tolerance
+				|| y < (long) bounds.top - tolerance || y >= (long) bounds.bottom + tolerance) return false;
+		return this.hits(x, y, tolerance);
+	}
+	/**
+	 * The exact test behind hitTest, for a point already within tolerance of the bounds of this.
+	 */
+	protected abstract boolean hits(int x, int y, int tolerance);
+	/**
+	 * @return a detached command drawing the same as this, and independent of it
+	 */
+	abstract PaintCommand copy();
+	/**
+	 * Draw this on a JavaFX canvas.
+	 * @param g
+	 */
+	public void execute(GraphicsContext g) {
+		this.execute(new FXRenderer(g));
+	}
+	/**
+	 * Draw this on any Renderer.
+	 * @param g
+	 */
+	public abstract void execute(Renderer g);
 }
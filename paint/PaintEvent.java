@@ -0,0 +1,105 @@
+package ca.utoronto.utm.paint;
+
+/**
+ * A change to a PaintModel, as received by its PaintListeners: what kind of
+ * change, the command it was to, and the area of the canvas it touched.
+ * RESPONDS-TO PaintModel, PaintListener
+ */
+public class PaintEvent {
+	public enum Type {
+		ADDED, // command was added on top of the others
+		REMOVED, // command was removed
+		CHANGED, // a setter changed command
+		EDIT_STARTED, // command was added as the command being edited, see PaintModel.beginEdit
+		EDIT_ENDED, // command, which was being edited, was committed with the others
+		RESET, // all commands were replaced
+		BATCH, // many changes, made between PaintModel.beginBatch and endBatch
+		SELECTION // the selection, or the rubber band selecting, changed, see PaintModel.select
+	}
+
+	private final Type type;
+	private final PaintCommand command;
+	private final Rect oldBounds, newBounds, dirty;
+
+	private PaintEvent(Type type, PaintCommand command, Rect oldBounds, Rect newBounds, Rect dirty) {
+		this.type = type;
+		this.command = command;
+		this.oldBounds = oldBounds;
+		this.newBounds = newBounds;
+		this.dirty = dirty;
+	}
+
+	static PaintEvent added(PaintCommand command) {
+		Rect bounds = command.getBounds();
+		return new PaintEvent(Type.ADDED, command, Rect.EMPTY, bounds, bounds);
+	}
+
+	static PaintEvent removed(PaintCommand command) {
+		Rect bounds = command.getBounds();
+		return new PaintEvent(Type.REMOVED, command, bounds, Rect.EMPTY, bounds);
+	}
+
+	static PaintEvent changed(PaintCommand command, Rect oldBounds, Rect dirty) {
+		return new PaintEvent(Type.CHANGED, command, oldBounds, command.getBounds(), dirty);
+	}
+
+	static PaintEvent editStarted(PaintCommand command) {
+		return new PaintEvent(Type.EDIT_STARTED, command, Rect.EMPTY, command.getBounds(), Rect.EMPTY);
+	}
+
+	static PaintEvent editEnded(PaintCommand command) {
+		Rect bounds = command.getBounds();
+		return new PaintEvent(Type.EDIT_ENDED, command, bounds, bounds, bounds);
+	}
+
+	static PaintEvent reset() {
+		return new PaintEvent(Type.RESET, null, Rect.EMPTY, Rect.EMPTY, null);
+	}
+
+	static PaintEvent selectionChanged() {
+		return new PaintEvent(Type.SELECTION, null, Rect.EMPTY, Rect.EMPTY, Rect.EMPTY);
+	}
+
+	/**
+	 * @param dirty the area touched by all the changes, null for everything
+	 */
+	static PaintEvent batch(Rect dirty) {
+		return new PaintEvent(Type.BATCH, null, Rect.EMPTY, Rect.EMPTY, dirty);
+	}
+
+	public Type getType() {
+		return this.type;
+	}
+
+	/**
+	 * @return the command the change was to, null for RESET, BATCH and SELECTION
+	 */
+	public PaintCommand getCommand() {
+		return this.command;
+	}
+
+	/**
+	 * @return the bounds of the command before the change, Rect.EMPTY if it was not drawn
+	 */
+	public Rect getOldBounds() {
+		return this.oldBounds;
+	}
+
+	/**
+	 * @return the bounds of the command after the change, Rect.EMPTY if it is not drawn
+	 */
+	public Rect getNewBounds() {
+		return this.newBounds;
+	}
+
+	/**
+	 * @return the area of the canvas to redraw, null if everything has to be
+	 */
+	public Rect getDirty() {
+		return this.dirty;
+	}
+
+	public String toString() {
+		return "PaintEvent[" + this.type + " " + this.dirty + "]";
+	}
+}
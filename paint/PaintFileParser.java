@@ -2,306 +2,653 @@ package ca.utoronto.utm.paint;
 
 import javafx.scene.paint.Color;
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Arrays;
+import java.util.List;
 /**
  * Parse a file in Version 1.0 PaintSaveFile format. An instance of this class
  * understands the paint save file format, storing information about
  * its effort to parse a file. After a successful parse, an instance
  * will have an ArrayList of PaintCommand suitable for rendering.
  * If there is an error in the parse, the instance stores information
- * about the error. For more on the format of Version 1.0 of the paint 
+ * about the error. For more on the format of Version 1.0 of the paint
  * save file format, see the associated documentation.
+ *
+ * The input is scanned one character at a time into a reusable line buffer,
+ * dropping white space as it goes, and each completed line is matched and
+ * its numbers parsed in place, so no Strings are built for the lines of the file.
  * RESPONDS-TO View
- * 
+ *
  * @author Gagandeep Bhangal (1004235696)
  *
  */
 public class PaintFileParser {
 	private int lineNumber = 0; // the current line being parsed
 	private String errorMessage = ""; // error encountered during parse
-	private PaintModel paintModel; 
+	private String errorDetail = ""; // errorMessage without the line number
+	private int errorLine = 0; // line of errorMessage
+	private PaintModel paintModel;
+	private Progress progress; // told how parse(File, PaintModel) is going, may be null
+	private CommandSink sink; // see setSink, null to hand all commands to the model at the end
+	private int batchSize; // commands to collect before handing them to sink
+	private boolean lazy; // see setLazy
+	/**
+	 * The mapped file of a lazy parse(File, PaintModel), null if squiggles are
+	 * parsed whole. Then a squiggle is indexed by the range of its point lines,
+	 * with the extent and number of its points.
+	 */
+	private ByteBuffer source;
+	private long fed; // characters fed to accept since begin, the offset of the next one
+	private boolean filled; // of the squiggle being indexed
+	private int pointsFrom, pointsTo, points, minX, minY, maxX, maxY;
+	private boolean cancelled; // the last parse was cancelled through progress
 	private Color color;
 	private ArrayList<PaintCommand> temp;
-	
-	/**
-	 * Below are Patterns used in parsing 
-	 */
-	private Pattern pFileStart=Pattern.compile("^PaintSaveFileVersion1.0$");
-	private Pattern pFileEnd=Pattern.compile("^EndPaintSaveFile$");
-	private Pattern pColour=Pattern.compile("color:([0]*[01]?[0-9]?[0-9]|[0]*2[0-4][0-9]|[0]*25[0-5]),([0]*[01]?[0-9]?[0-9]|[0]*2[0-4][0-9]|[0]*25[0-5]),([0]*[01]?[0-9]?[0-9]|[0]*2[0-4][0-9]|[0]*25[0-5])");
-	private Pattern pFilled=Pattern.compile("filled:(false)|filled:(true)");
-	
-	
-	private Pattern pCircleStart=Pattern.compile("^Circle$");
-	private Pattern pCircleEnd=Pattern.compile("^EndCircle$");
-	private Pattern pCircleCenter=Pattern.compile("center:\\(([0-9]*),([0-9]*)\\)");
-	private Pattern pCircleRadius=Pattern.compile("radius:([0-9]*+)");
-	
-	private Pattern pRectangleStart=Pattern.compile("^Rectangle$");
-	private Pattern pRectangleEnd=Pattern.compile("^EndRectangle$");
-	private Pattern pRectangleP1=Pattern.compile("p1:\\((-?[0-9]*),(-?[0-9]*)\\)");
-	private Pattern pRectangleP2=Pattern.compile("p2:\\((-?[0-9]*),(-?[0-9]*)\\)");
-	
-	private Pattern pSquiggleStart=Pattern.compile("^Squiggle$");
-	private Pattern pSquiggleEnd=Pattern.compile("^EndSquiggle$");
-	private Pattern pPoints=Pattern.compile("^points$");
-	private Pattern pEndPoints=Pattern.compile("^endpoints$");
-	private Pattern pPoint=Pattern.compile("point:\\((-?[0-9]*),(-?[0-9]*)\\)");
-	
-	/**
-	 * Store an appropriate error message in this, including 
+
+	private int state; // of the finite state machine, see step
+	private CircleCommand circleCommand;
+	private RectangleCommand rectangleCommand;
+	private SquiggleCommand squiggleCommand;
+
+	private char[] line = new char[128]; // the current line with white space removed
+	private int length; // of the current line
+	private boolean inLine; // some characters of the current line have been seen
+	private boolean lastWasCR; // so that \r\n ends a single line
+	private int pos; // position in line while matching
+	private int value; // result of the last readInt
+	private int pointX; // x coordinate read by readPoint, y is left in value
+
+	/**
+	 * How much of a file is memory mapped at a time by parse(File, PaintModel)
+	 */
+	private static final long MAP_WINDOW = 64L << 20;
+	/**
+	 * How many bytes parse(File, PaintModel) reads between progress reports
+	 */
+	private static final int PROGRESS_STEP = 1 << 20;
+	/**
+	 * Batches handed to a sink start small, so the first commands show at once,
+	 * and double up to the largest, so a huge file is handed over in few of them
+	 */
+	private static final int FIRST_BATCH = 256;
+	private static final int MAX_BATCH = 1 << 16;
+
+	/**
+	 * Below are the lines and prefixes recognized while parsing
+	 */
+	private static final char[] FILE_START = "PaintSaveFileVersion1.0".toCharArray();
+	private static final char[] FILE_END = "EndPaintSaveFile".toCharArray();
+	private static final char[] COLOR = "color:".toCharArray();
+	private static final char[] FILLED_TRUE = "filled:true".toCharArray();
+	private static final char[] FILLED_FALSE = "filled:false".toCharArray();
+
+	private static final char[] CIRCLE_START = "Circle".toCharArray();
+	private static final char[] CIRCLE_END = "EndCircle".toCharArray();
+	private static final char[] CIRCLE_CENTER = "center:(".toCharArray();
+	private static final char[] CIRCLE_RADIUS = "radius:".toCharArray();
+
+	private static final char[] RECTANGLE_START = "Rectangle".toCharArray();
+	private static final char[] RECTANGLE_END = "EndRectangle".toCharArray();
+	private static final char[] RECTANGLE_P1 = "p1:(".toCharArray();
+	private static final char[] RECTANGLE_P2 = "p2:(".toCharArray();
+
+	private static final char[] SQUIGGLE_START = "Squiggle".toCharArray();
+	private static final char[] SQUIGGLE_END = "EndSquiggle".toCharArray();
+	private static final char[] POINTS = "points".toCharArray();
+	private static final char[] END_POINTS = "endpoints".toCharArray();
+	private static final char[] POINT = "point:(".toCharArray();
+
+	/**
+	 * Store an appropriate error message in this, including
 	 * lineNumber where the error occurred. Then, set this error in the paintmodel and set the model to the
 	 * previous one so nothing is erased on the screen.
 	 * @param mesg is the error message to be added to this.errorMessage
 	 */
 	private void error(String mesg){
+		this.errorDetail = mesg;
+		this.errorLine = lineNumber;
 		this.errorMessage = "Error in line "+lineNumber+" "+mesg;
-		this.paintModel.setError(this.errorMessage, true);
+		this.tellModel(true);
+	}
+
+	/**
+	 * Set the error of the paint model to this.errorMessage. Not when streaming to
+	 * a sink, the model may then be on screen, owned by another thread, and the
+	 * result is only kept in this.
+	 * @param error whether the parse failed
+	 */
+	private void tellModel(boolean error){
+		if (this.paintModel != null && this.sink == null) {
+			this.paintModel.setError(this.errorMessage, error);
+		}
 	}
-	
+
 	/**
-	 * 
+	 *
 	 * @return the error message resulting from an unsuccessful parse
 	 */
 	public String getErrorMessage(){
 		return this.errorMessage;
 	}
-	
+
+	/**
+	 * @param progress told, in bytes, how far parse(File, PaintModel) has got, and 
+	 * able to cancel it. null for no reports.
+	 */
+	void setProgress(Progress progress){
+		this.progress = progress;
+	}
+
+	/**
+	 * Stream the commands to sink, in batches, as they are parsed, instead of
+	 * setting them as the commands of the model at the end. The model of the
+	 * parse is then left alone, see getErrorMessage and isCancelled for how it went.
+	 * @param sink null to go back to setting the commands of the model
+	 */
+	void setSink(CommandSink sink){
+		this.sink = sink;
+	}
+
+	/**
+	 * Parse squiggles lazily: parse(File, PaintModel) only checks and indexes
+	 * their points, keeping the file mapped, and the points are read from it
+	 * when needed, see LazySquiggleCommand. A huge file then takes little
+	 * more memory than its circles and rectangles. Files over 2GB, which are
+	 * not mapped in one piece, are parsed whole.
+	 * The file must not be changed in place while its commands are in use.
+	 * @param lazy
+	 */
+	void setLazy(boolean lazy){
+		this.lazy = lazy;
+	}
+
+	/**
+	 * @return whether the last parse stopped because it was cancelled
+	 */
+	public boolean isCancelled(){
+		return this.cancelled;
+	}
+
+	/**
+	 * Report done bytes out of total to progress.
+	 * @return false, with the parse marked as cancelled, if progress wants to stop
+	 */
+	private boolean report(long done, long total){
+		if (this.progress == null || this.progress.update(done, total)) return true;
+		this.cancelled = true;
+		this.errorMessage = "Cancelled";
+		this.tellModel(true);
+		return false;
+	}
+
+	/**
+	 * command is complete, keep it, handing a full batch to the sink if there is one.
+	 * @return false, with the parse marked as cancelled, if the sink wants to stop
+	 */
+	private boolean add(PaintCommand command){
+		this.temp.add(command);
+		if (this.sink == null || this.temp.size() < this.batchSize) return true;
+		this.batchSize = Math.min(MAX_BATCH, 2 * this.batchSize);
+		return this.publish();
+	}
+
+	/**
+	 * Hand the commands kept so far to the sink.
+	 * @return false, with the parse marked as cancelled, if the sink wants to stop
+	 */
+	private boolean publish(){
+		if (this.temp.isEmpty()) return true;
+		List<PaintCommand> batch = this.temp;
+		this.temp = new ArrayList<PaintCommand>();
+		if (this.sink.accept(batch)) return true;
+		this.cancelled = true;
+		this.errorMessage = "Cancelled";
+		return false;
+	}
+
 	/**
 	 * Parse the inputStream as a Paint Save File Format file.
 	 * The result of the parse is stored as an ArrayList of Paint command.
 	 * If the parse was not successful, this.errorMessage is appropriately
 	 * set, with a useful error message.
-	 * 
+	 *
 	 * @param inputStream the open file to parse
 	 * @param paintModel the paint model to add the commands to
 	 * @return whether the complete file was successfully parsed
 	 */
 	public boolean parse(BufferedReader inputStream, PaintModel paintModel) {
-		this.paintModel = paintModel;
-		this.errorMessage="";
-		temp = new ArrayList<PaintCommand>();
-		
-		CircleCommand circleCommand = null; 
-		RectangleCommand rectangleCommand = null;
-		SquiggleCommand squiggleCommand = null;
-	
-		try {	
-			int state=0; Matcher m; Matcher o; Matcher n; Matcher g; Matcher u; String l;
-			this.lineNumber=0;
-			
-			while ((l = inputStream.readLine()) != null) {
-				this.lineNumber++;
-				l = l.replaceAll("\\s","");
-				if (l.isEmpty() == false) {
-					switch(state){
-					case 0:
-						m=pFileStart.matcher(l);
-						if(m.matches()){
-							state=1;
-							break;
-						}
-						error("Expected Start of Paint Save File");
-						return false;
-					case 1: 
-						m=pCircleStart.matcher(l);
-						o=pRectangleStart.matcher(l);
-						n=pSquiggleStart.matcher(l);
-						g=pFileEnd.matcher(l);
-						if(m.matches()){
-							circleCommand = new CircleCommand();
-							state=2; 
-							break;
-						}
-						else if(o.matches()){
-							rectangleCommand = new RectangleCommand();
-							state=7; 
-							break;
-						}	
-						else if(n.matches()){
-							squiggleCommand = new SquiggleCommand();
-							state=12; 
-							break;
-						}
-						else if(g.matches()){
-							state = 17;
-							break;
-						}
-						error("Expected Start of Paint Save File");
-						return false;
-					case 2:
-						m=pColour.matcher(l);
-						if (m.matches()) {
-							color = Color.rgb(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)), Integer.parseInt(m.group(3)));
-							circleCommand.setColor(color);	
-							state = 3;
-							break;
-						}
-						error("Expected color in proper format");
-						return false;
-					case 3:
-						m = pFilled.matcher(l);
-						if (m.matches()) {
-							int num;
-							if (l.charAt(7) == 'f') {
-								num = 1;
-							} else {
-								num = 2;
-							}
-							circleCommand.setFill(Boolean.parseBoolean(m.group(num)));
-							state = 4;
-							break;
-						}
-						error("Expected filled in proper format");
-						return false;
-					case 4:
-						m=pCircleCenter.matcher(l);
-						if (m.matches()) {
-							circleCommand.setCentre(new Point(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2))));
-							state = 5;
-							break;
-						}
-						error("Expected center point in proper format");
-						return false;
-					case 5:
-						m=pCircleRadius.matcher(l);
-						if (m.matches()) {
-							circleCommand.setRadius(Integer.parseInt(m.group(1)));
-							state = 6;
-							break;
-						}
-						error("Expected radius in proper format");
-						return false;
-					case 6:
-						m=pCircleEnd.matcher(l);
-						if (m.matches()) {
-							temp.add(circleCommand);
-							state = 1;
-							break;
-						}
-						error("Expected EndCircle in proper format");
-						return false;
-					case 7:
-						m=pColour.matcher(l);
-						if (m.matches()) {
-							color = Color.rgb(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)), Integer.parseInt(m.group(3)));
-							rectangleCommand.setColor(color);
-							state = 8;
-							break;
-						}
-						error("Expected color in proper format");
-						return false;
-					case 8:
-						m = pFilled.matcher(l);
-						if (m.matches()) {
-							int num;
-							if (l.charAt(7) == 'f') {
-								num = 1;
-							} else {
-								num = 2;
-							}
-							rectangleCommand.setFill(Boolean.parseBoolean(m.group(num)));
-							state = 9;
-							break;
-						}
-						error("Expected filled in proper format");
-						return false;
-					case 9:
-						m=pRectangleP1.matcher(l);
-						if (m.matches()) {
-							rectangleCommand.setP1(new Point(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2))));
-							state = 10;
-							break;
-						}
-						error("Expected p1 point in proper format");
-						return false;
-					case 10:
-						m=pRectangleP2.matcher(l);
-						if (m.matches()) {
-							rectangleCommand.setP2(new Point(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2))));
-							state = 11;
-							break;
-						}
-						error("Expected p2 point in proper format");
-						return false;
-					case 11:
-						m=pRectangleEnd.matcher(l);
-						if (m.matches()) {
-							temp.add(rectangleCommand);
-							state = 1;
-							break;
-						}
-						error("Expected EndCircle in proper format");
-						return false;
-					case 12:
-						m=pColour.matcher(l);
-						if (m.matches()) {
-							color = Color.rgb(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)), Integer.parseInt(m.group(3)));
-							squiggleCommand.setColor(color);
-							state = 13;
-							break;
-						}
-						error("Expected color in proper format");
-						return false;
-					case 13:
-						m = pFilled.matcher(l);
-						if (m.matches()) {
-							int num;
-							if (l.charAt(7) == 'f') {
-								num = 1;
-							} else {
-								num = 2;
-							}
-							squiggleCommand.setFill(Boolean.parseBoolean(m.group(num)));
-							state = 14;
-							break;
-						}
-						error("Expected filled in proper format");
-						return false;
-					case 14:
-						m=pPoints.matcher(l);
-						if (m.matches()) {
-							state = 15;
-							break;
-						}
-						error("Expected 'points' in proper format");
-						return false;
-					case 15:
-						m=pPoint.matcher(l);
-						u =pEndPoints.matcher(l);
-						if (m.matches()) {
-							squiggleCommand.add(new Point(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2))));
-							state = 15;
-							break;
-						}
-						else if (u.matches()) {
-							state = 16;
-							break;
-						}
-						error("Expected points in proper format");
-						return false;
-					case 16:
-						m=pSquiggleEnd.matcher(l);
-						if (m.matches()) {
-							temp.add(squiggleCommand);
-							state = 1;
-							break;
-						}
-						error("Expected EndSquiggle in proper format");
-						return false;
-					case 17:
-						error("Improper format, lines after End File line");
-						return false;
+		this.begin(paintModel);
+		char[] buffer = new char[8192];
+		try {
+			int n;
+			while ((n = inputStream.read(buffer)) != -1) {
+				for (int i = 0; i < n; i++) {
+					if (!this.accept(buffer[i])) return false;
+				}
+			}
+		} catch (IOException e) {
+			error("Could not read file: "+e.getMessage());
+			return false;
+		}
+		return this.end();
+	}
+
+	/**
+	 * Parse file as a Paint Save File Format file, exactly as parse(BufferedReader, PaintModel)
+	 * does, but memory map the file and feed its bytes straight to the scanner.
+	 * The format is plain ASCII, so there is no charset decoding, and nothing is
+	 * allocated per line or per block read.
+	 *
+	 * @param file the file to parse
+	 * @param paintModel the paint model to add the commands to
+	 * @return whether the complete file was successfully parsed
+	 */
+	public boolean parse(File file, PaintModel paintModel) {
+		this.begin(paintModel);
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			boolean whole = this.lazy && size <= Integer.MAX_VALUE; // mapped in one piece, kept as source
+			long window = whole ? Math.max(size, 1) : MAP_WINDOW;
+			for (long offset = 0; offset < size; offset += window) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(window, size - offset));
+				if (whole) this.source = buffer;
+				int limit = buffer.limit();
+				for (int from = 0; from < limit; from += PROGRESS_STEP) {
+					int to = (int)Math.min(limit, (long)from + PROGRESS_STEP);
+					if (!this.feed(buffer, from, to)) return false;
+					if (!this.report(offset + to, size)) return false;
 				}
-			}	
 			}
-		}  catch (Exception e){
-			
+		} catch (IOException e) {
+			error("Could not read file: "+e.getMessage());
+			return false;
+		}
+		return this.end();
+	}
+
+	/**
+	 * Get ready to parse a new file into paintModel.
+	 * @param paintModel
+	 */
+	void begin(PaintModel paintModel) {
+		this.begin(paintModel, 0);
+	}
+
+	/**
+	 * Get ready to parse, starting the state machine in state. 
+	 * @param paintModel where to report the result, null to only keep it in this
+	 * @param state 0 at the start of a file, 1 at the start of a shape block
+	 */
+	void begin(PaintModel paintModel, int state) {
+		this.paintModel = paintModel;
+		this.errorMessage = "";
+		this.errorDetail = "";
+		this.errorLine = 0;
+		this.cancelled = false;
+		this.temp = new ArrayList<PaintCommand>();
+		this.batchSize = FIRST_BATCH;
+		this.source = null;
+		this.fed = 0;
+		this.state = state;
+		this.lineNumber = 0;
+		this.length = 0;
+		this.inLine = false;
+		this.lastWasCR = false;
+	}
+
+	/**
+	 * Feed the next character of the file to this. Lines end at \n, \r or \r\n,
+	 * as for BufferedReader.readLine.
+	 * @param c
+	 * @return false if the parse failed at the line c completes
+	 */
+	boolean accept(char c) {
+		this.fed++;
+		if (c == '\n' || c == '\r') {
+			boolean crlf = c == '\n' && this.lastWasCR;
+			this.lastWasCR = c == '\r';
+			if (crlf) return true;
+			return this.endLine();
+		}
+		this.lastWasCR = false;
+		this.inLine = true;
+		if (c == ' ' || c == '\t' || c == '\u000B' || c == '\f') return true;
+		if (this.length == this.line.length) {
+			this.line = Arrays.copyOf(this.line, 2 * this.line.length);
+		}
+		this.line[this.length++] = c;
+		return true;
+	}
+
+	/**
+	 * Feed the ASCII bytes of buffer from index from up to index to.
+	 * @return false if the parse failed
+	 */
+	boolean feed(ByteBuffer buffer, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (!this.accept((char)(buffer.get(i) & 0xff))) return false;
 		}
-		this.paintModel.setError("", false);
+		return true;
+	}
+
+	/**
+	 * Finish a line left without a terminator at the end of the input.
+	 * @return false if the parse failed at that line
+	 */
+	boolean endInput() {
+		return !this.inLine || this.endLine();
+	}
+
+	/**
+	 * The whole file has been fed to this, finish the parse.
+	 * @return whether the complete file was successfully parsed
+	 */
+	boolean end() {
+		if (!this.endInput()) return false;
+		if (this.sink != null) return this.publish();
+		this.tellModel(false);
 		this.paintModel.setCommands(temp);
 		return true;
 	}
+
+	/**
+	 * Below expose the progress of a parse fed with begin, feed and endInput
+	 */
+	int getLineNumber() { return this.lineNumber; }
+	int getState() { return this.state; }
+	int getErrorLine() { return this.errorLine; }
+	String getErrorDetail() { return this.errorDetail; }
+	ArrayList<PaintCommand> getCommands() { return this.temp; }
+
+	private boolean endLine() {
+		this.lineNumber++;
+		this.inLine = false;
+		if (this.length == 0) return true; // blank lines are ignored
+		this.pos = 0;
+		boolean ok = this.step();
+		this.length = 0;
+		return ok;
+	}
+
+	/**
+	 * Advance the state machine over the current, non-empty, line.
+	 * @return false if the line is not what the current state expects
+	 */
+	private boolean step() {
+		switch(state){
+		case 0:
+			if(is(FILE_START)){
+				state=1;
+				return true;
+			}
+			error("Expected Start of Paint Save File");
+			return false;
+		case 1:
+			if(is(CIRCLE_START)){
+				state=2;
+				return true;
+			}
+			else if(is(RECTANGLE_START)){
+				state=7;
+				return true;
+			}
+			else if(is(SQUIGGLE_START)){
+				state=12;
+				return true;
+			}
+			else if(is(FILE_END)){
+				state = 17;
+				return true;
+			}
+			error("Expected Start of Paint Save File");
+			return false;
+		case 2:
+			if (readColor()) {
+				state = 3;
+				return true;
+			}
+			error("Expected color in proper format");
+			return false;
+		case 3:
+			if (is(FILLED_TRUE) || is(FILLED_FALSE)) {
+				circleCommand = new CircleCommand(color, length == FILLED_TRUE.length);
+				state = 4;
+				return true;
+			}
+			error("Expected filled in proper format");
+			return false;
+		case 4:
+			if (prefix(CIRCLE_CENTER) && readPoint()) {
+				circleCommand.setCentre(new Point(pointX, value));
+				state = 5;
+				return true;
+			}
+			error("Expected center point in proper format");
+			return false;
+		case 5:
+			if (prefix(CIRCLE_RADIUS) && readInt(false) && atEnd()) {
+				circleCommand.setRadius(value);
+				state = 6;
+				return true;
+			}
+			error("Expected radius in proper format");
+			return false;
+		case 6:
+			if (is(CIRCLE_END)) {
+				state = 1;
+				return this.add(circleCommand);
+			}
+			error("Expected EndCircle in proper format");
+			return false;
+		case 7:
+			if (readColor()) {
+				state = 8;
+				return true;
+			}
+			error("Expected color in proper format");
+			return false;
+		case 8:
+			if (is(FILLED_TRUE) || is(FILLED_FALSE)) {
+				rectangleCommand = new RectangleCommand(color, length == FILLED_TRUE.length);
+				state = 9;
+				return true;
+			}
+			error("Expected filled in proper format");
+			return false;
+		case 9:
+			if (prefix(RECTANGLE_P1) && readPoint()) {
+				rectangleCommand.setP1(new Point(pointX, value));
+				state = 10;
+				return true;
+			}
+			error("Expected p1 point in proper format");
+			return false;
+		case 10:
+			if (prefix(RECTANGLE_P2) && readPoint()) {
+				rectangleCommand.setP2(new Point(pointX, value));
+				state = 11;
+				return true;
+			}
+			error("Expected p2 point in proper format");
+			return false;
+		case 11:
+			if (is(RECTANGLE_END)) {
+				state = 1;
+				return this.add(rectangleCommand);
+			}
+			error("Expected EndCircle in proper format");
+			return false;
+		case 12:
+			if (readColor()) {
+				state = 13;
+				return true;
+			}
+			error("Expected color in proper format");
+			return false;
+		case 13:
+			if (is(FILLED_TRUE) || is(FILLED_FALSE)) {
+				if (source == null) {
+					squiggleCommand = new SquiggleCommand(color, length == FILLED_TRUE.length);
+				} else {
+					filled = length == FILLED_TRUE.length;
+				}
+				state = 14;
+				return true;
+			}
+			error("Expected filled in proper format");
+			return false;
+		case 14:
+			if (is(POINTS)) {
+				pointsFrom = pointsTo = (int)fed;
+				points = 0;
+				state = 15;
+				return true;
+			}
+			error("Expected 'points' in proper format");
+			return false;
+		case 15:
+			if (prefix(POINT) && readPoint()) {
+				if (source == null) {
+					squiggleCommand.add(pointX, value);
+				} else {
+					index(pointX, value);
+				}
+				state = 15;
+				return true;
+			}
+			else if (is(END_POINTS)) {
+				state = 16;
+				return true;
+			}
+			error("Expected points in proper format");
+			return false;
+		case 16:
+			if (is(SQUIGGLE_END)) {
+				state = 1;
+				if (source != null) {
+					Rect extent = points == 0 ? Rect.EMPTY : Rect.around(minX, minY, maxX, maxY);
+					return this.add(new LazySquiggleCommand(color, filled, source, pointsFrom, pointsTo, extent));
+				}
+				squiggleCommand.trimToSize();
+				return this.add(squiggleCommand);
+			}
+			error("Expected EndSquiggle in proper format");
+			return false;
+		case 17:
+			error("Improper format, lines after End File line");
+			return false;
+		}
+		return false;
+	}
+
+	/**
+	 * Below are helpers matching the current line, starting at pos
+	 */
+
+	/**
+	 * @return whether the whole line is keyword
+	 */
+	private boolean is(char[] keyword) {
+		return this.length == keyword.length && prefix(keyword);
+	}
+
+	/**
+	 * If the line starts with keyword, move pos past it.
+	 */
+	private boolean prefix(char[] keyword) {
+		if (this.length < keyword.length) return false;
+		for (int i = 0; i < keyword.length; i++) {
+			if (this.line[i] != keyword[i]) return false;
+		}
+		this.pos = keyword.length;
+		return true;
+	}
+
+	private boolean expect(char c) {
+		if (this.pos < this.length && this.line[this.pos] == c) {
+			this.pos++;
+			return true;
+		}
+		return false;
+	}
+
+	private boolean atEnd() {
+		return this.pos == this.length;
+	}
+
+	/**
+	 * Take the point (x,y), just read, into the index of the squiggle being parsed lazily.
+	 */
+	private void index(int x, int y) {
+		if (this.points++ == 0) {
+			this.minX = this.maxX = x; this.minY = this.maxY = y;
+		} else {
+			this.minX = Math.min(this.minX, x); this.maxX = Math.max(this.maxX, x);
+			this.minY = Math.min(this.minY, y); this.maxY = Math.max(this.maxY, y);
+		}
+		this.pointsTo = (int)this.fed;
+	}
+
+	/**
+	 * Add the points on the point lines of source from index from up to index
+	 * to, as indexed by a lazy parse, to squiggle.
+	 * @return false if they are no longer point lines, the file has changed
+	 */
+	static boolean readPoints(ByteBuffer source, int from, int to, SquiggleCommand squiggle) {
+		PaintFileParser parser = new PaintFileParser();
+		parser.begin(null, 15);
+		parser.squiggleCommand = squiggle;
+		return parser.feed(source, from, to) && parser.endInput() && parser.state == 15;
+	}
+
+	/**
+	 * Read a non-empty run of digits, optionally preceded by a '-', into value.
+	 * @param signed whether a leading '-' is allowed
+	 * @return false if there is no number at pos, or it does not fit in an int
+	 */
+	private boolean readInt(boolean signed) {
+		boolean negative = signed && expect('-');
+		int start = this.pos;
+		long v = 0;
+		while (this.pos < this.length) {
+			char c = this.line[this.pos];
+			if (c < '0' || c > '9') break;
+			v = 10 * v + (c - '0');
+			if (v > Integer.MAX_VALUE) return false;
+			this.pos++;
+		}
+		if (this.pos == start) return false;
+		this.value = (int)(negative ? -v : v);
+		return true;
+	}
+
+	/**
+	 * Read the rest of a point "x,y)" ending the line, x and y possibly negative.
+	 */
+	private boolean readPoint() {
+		if (!readInt(true)) return false;
+		this.pointX = this.value;
+		return expect(',') && readInt(true) && expect(')') && atEnd();
+	}
+
+	/**
+	 * Read a whole "color:r,g,b" line into color, each of r,g,b in 0..255
+	 * (leading zeroes are allowed).
+	 */
+	private boolean readColor() {
+		if (!prefix(COLOR)) return false;
+		if (!readInt(false) || value > 255) return false;
+		int r = value;
+		if (!expect(',') || !readInt(false) || value > 255) return false;
+		int g = value;
+		if (!expect(',') || !readInt(false) || value > 255 || !atEnd()) return false;
+		this.color = Color.rgb(r, g, value);
+		return true;
+	}
 }
@@ -6,6 +6,9 @@ import org.junit.Test;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -160,7 +163,7 @@ public class PaintFileParserTest {
 	@Test
 	public void parserTest21() throws IOException {
 		this.doParserTestCase("samplefiles/circle_negative_center.txt",
-				"Returns false for circle with a negative center coordinate(s)", "Error in line 5 ");
+				"Returns true for circle with a negative center coordinate(s)", "");
 	}
 	@Test
 	public void parserTest22() throws IOException {
@@ -187,5 +190,98 @@ public class PaintFileParserTest {
 		this.doParserTestCase("samplefiles/multiple_blank_lines.txt",
 				"Returns true for file format with multiple empty lines", "");
 	}
+
+	/**
+	 * Parse text, which must fail at line.
+	 */
+	private void doParserErrorCase(String text, String message, int line) {
+		PaintFileParser parser = new PaintFileParser();
+		assertFalse(message, parser.parse(new BufferedReader(new StringReader(text)), new PaintModel()));
+		Matcher m = pErrorMessage.matcher(parser.getErrorMessage());
+		assertTrue(message + ": Error Message " + parser.getErrorMessage(), m.find());
+		assertEquals(message + ": Error line", String.valueOf(line), m.group(1));
+	}
+
+	private static final String CIRCLE = "Paint Save File Version 1.0\nCircle\n\tcolor:1,2,3\n\tfilled:true\n";
+	private static final String RECTANGLE = "Paint Save File Version 1.0\nRectangle\n\tcolor:1,2,3\n\tfilled:false\n";
+
+	@Test
+	public void parserTestRadiusMissing() {
+		this.doParserErrorCase(CIRCLE + "\tcenter:(1,2)\n\tradius:\nEnd Circle\nEnd Paint Save File\n",
+				"Returns false for radius without a value", 6);
+	}
+
+	@Test
+	public void parserTestSignWithoutDigits() {
+		this.doParserErrorCase(RECTANGLE + "\tp1:(-,3)\n\tp2:(4,5)\nEnd Rectangle\nEnd Paint Save File\n",
+				"Returns false for a point coordinate that is only a sign", 5);
+	}
+
+	@Test
+	public void parserTestCoordinateOutOfRange() {
+		this.doParserErrorCase(RECTANGLE + "\tp1:(1,3)\n\tp2:(2147483648,5)\nEnd Rectangle\nEnd Paint Save File\n",
+				"Returns false for a coordinate that does not fit in an int", 6);
+	}
+
+	@Test
+	public void parserTestRadiusOutOfRange() {
+		this.doParserErrorCase(CIRCLE + "\tcenter:(1,2)\n\tradius:99999999999\nEnd Circle\nEnd Paint Save File\n",
+				"Returns false for a radius that does not fit in an int", 6);
+	}
+
+	@Test
+	public void parserTestColorOutOfRange() {
+		this.doParserErrorCase("Paint Save File Version 1.0\nSquiggle\n\tcolor:1,256,3\n",
+				"Returns false for a color component over 255", 3);
+	}
+
+	@Test
+	public void parserTestLargestCoordinate() {
+		PaintFileParser parser = new PaintFileParser();
+		String text = RECTANGLE + "\tp1:(-2147483647,3)\n\tp2:(2147483647,5)\nEnd Rectangle\nEnd Paint Save File\n";
+		PaintModel paintModel = new PaintModel();
+		assertTrue("Returns true for coordinates just in range", parser.parse(new BufferedReader(new StringReader(text)), paintModel));
+		RectangleCommand rectangle = (RectangleCommand) paintModel.getCommands().get(0);
+		assertEquals("Left", -2147483647, rectangle.getTopLeft().x);
+		assertEquals("Right", 2147483647, rectangle.getBottomRight().x);
+		assertEquals("Width, held at the largest int", Integer.MAX_VALUE, rectangle.getDimensions().x);
+		assertEquals("Height", 2, rectangle.getDimensions().y);
+		Rect bounds = rectangle.getBounds();
+		assertEquals("Bounds left", Integer.MIN_VALUE, bounds.left);
+		assertEquals("Bounds top", 2, bounds.top);
+		assertEquals("Bounds right", Integer.MAX_VALUE, bounds.right);
+		assertEquals("Bounds bottom", 7, bounds.bottom);
+		assertEquals("Bounds width", 4294967295L, bounds.getWidth());
+		assertEquals("Bounds height", 5, bounds.getHeight());
+	}
+
+	/**
+	 * @return what paintModel saves as, in the Version 1.0 format
+	 */
+	private String save(PaintModel paintModel) {
+		StringWriter s = new StringWriter();
+		paintModel.save(new PrintWriter(s));
+		return s.toString();
+	}
+
+	@Test
+	public void saveReopenNegativeCoordinates() {
+		// Drawn after panning left of and above the origin
+		PaintModel paintModel = new PaintModel();
+		paintModel.addCommand(new CircleCommand(new Point(-40, 25), 10));
+		paintModel.addCommand(new RectangleCommand(new Point(-5, -6), new Point(7, -8)));
+		SquiggleCommand squiggle = new SquiggleCommand();
+		squiggle.add(-1, -2);
+		squiggle.add(3, -4);
+		paintModel.addCommand(squiggle);
+		String saved = this.save(paintModel);
+
+		PaintFileParser parser = new PaintFileParser();
+		PaintModel reopened = new PaintModel();
+		assertTrue("Reopens its own save file", parser.parse(new BufferedReader(new StringReader(saved)), reopened));
+		assertEquals("No error message", "", parser.getErrorMessage());
+		assertEquals("Same drawing", saved, this.save(reopened));
+		assertEquals("Negative centre", -40, ((CircleCommand) reopened.getCommands().get(0)).getCentre().x);
+	}
 }
 
@@ -0,0 +1,12 @@
+package ca.utoronto.utm.paint;
+
+/**
+ * Told about every change to a PaintModel it is added to.
+ * RESPONDS-TO PaintModel
+ */
+public interface PaintListener {
+	/**
+	 * @param event what changed
+	 */
+	void paintChanged(PaintEvent event);
+}
@@ -1,56 +1,605 @@
 package ca.utoronto.utm.paint;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.Observable;
-import java.util.Observer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 import javafx.scene.canvas.GraphicsContext;
 
-public class PaintModel extends Observable implements Observer {
+public class PaintModel {
 	
 	private boolean error = false;
 	private String errorMessage;
+	
+	/**
+	 * Told about every change, see fire. Copied on add and remove, so a
+	 * listener can add or remove listeners while being told.
+	 */
+	private PaintListener[] listeners = new PaintListener[0];
+	
+	/**
+	 * While batchDepth>0, events are not delivered but summed up here, and
+	 * delivered as one BATCH event by the endBatch that brings it back to 0.
+	 */
+	private int batchDepth;
+	private int batchEvents; // how many events were summed up
+	private Rect batchDirty = Rect.EMPTY; // union of their dirty areas
+	private boolean batchAll; // one of them needed everything redrawn
+	
+	public void addPaintListener(PaintListener listener){
+		PaintListener[] l = Arrays.copyOf(this.listeners, this.listeners.length+1);
+		l[l.length-1] = listener;
+		this.listeners = l;
+	}
+	
+	public void removePaintListener(PaintListener listener){
+		for(int i=0;i<this.listeners.length;i++){
+			if(this.listeners[i]==listener){
+				PaintListener[] l = new PaintListener[this.listeners.length-1];
+				System.arraycopy(this.listeners, 0, l, 0, i);
+				System.arraycopy(this.listeners, i+1, l, i, l.length-i);
+				this.listeners = l;
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Tell our listeners about event, or, in a batch, add it to the batch.
+	 * @param event
+	 */
+	private void fire(PaintEvent event){
+		if(this.batchDepth>0){
+			this.batchEvents++;
+			Rect dirty = event.getDirty();
+			if(dirty==null){
+				this.batchAll = true;
+			} else {
+				this.batchDirty = this.batchDirty.union(dirty);
+			}
+			return;
+		}
+		for(PaintListener l: this.listeners){
+			l.paintChanged(event);
+		}
+	}
+	
+	/**
+	 * Start a batch: until the matching endBatch, changes to this are not
+	 * reported one by one, but together, as one BATCH event covering the area
+	 * they all touched. Batches nest, only the outermost one reports.
+	 */
+	public void beginBatch(){
+		this.batchDepth++;
+	}
+	
+	/**
+	 * End the batch started by the matching beginBatch. Call it in a finally.
+	 */
+	public void endBatch(){
+		if(this.batchDepth==0)throw new IllegalStateException("endBatch without beginBatch");
+		if(--this.batchDepth>0 || this.batchEvents==0)return;
+		PaintEvent event = PaintEvent.batch(this.batchAll ? null : this.batchDirty);
+		this.batchEvents = 0;
+		this.batchDirty = Rect.EMPTY;
+		this.batchAll = false;
+		this.fire(event);
+	}
 
+	/**
+	 * Save this in the Version 1.0 format. Each command prints itself straight
+	 * into writer, so give it a generously buffered one.
+	 * @param writer closed when done
+	 */
 	public void save(PrintWriter writer) {
-		writer.println("Paint Save File Format Version 1.0");
-		for (PaintCommand t: commands) {
-			writer.println(t.print());
+		save(this.commands, writer, null);
+	}
+	
+	/**
+	 * Save commands in the Version 1.0 format, as save(PrintWriter) does.
+	 * @param commands
+	 * @param writer closed when done
+	 * @param progress told, in commands, how far the save has got. null for no reports.
+	 * @return false if progress cancelled the save, the file is then incomplete
+	 * @throws UncheckedIOException if a command could not be printed, the file is then incomplete
+	 */
+	static boolean save(List<PaintCommand> commands, PrintWriter writer, Progress progress) {
+		writer.println("Paint Save File Version 1.0");
+		int done = 0, total = commands.size();
+		try {
+			for (PaintCommand t: commands) {
+				t.print(writer);
+				writer.println();
+				done++;
+				if (progress != null && (done & 0x3ff) == 0 && !progress.update(done, total)) {
+					writer.close();
+					return false;
+				}
+			}
+		} catch (IOException e) {
+			// PrintWriter does not throw, a command that cannot be printed does, see LazySquiggleCommand
+			writer.close();
+			throw new UncheckedIOException(e);
 		}
 		writer.println("End Paint Save File");
 		writer.close();
+		return true;
+	}
+	
+	/**
+	 * Save this in the compact Version 2.0 (binary) format, with a checksum.
+	 * @param out
+	 * @throws IOException
+	 */
+	public void saveBinary(OutputStream out) throws IOException {
+		new PaintBinaryWriter(out, true).write(this.commands);
 	}
 	
+	/**
+	 * @return the commands as they are now, unaffected by later changes to this,
+	 * so they can be saved on another thread. This takes no time, the list is immutable.
+	 */
+	public List<PaintCommand> getSnapshot(){
+		return this.commands;
+	}
+	
+	/**
+	 * Remove all commands. This can be undone, the old commands are kept by the history.
+	 */
 	public void reset(){
+		this.endEdit();
+		this.history.record(new History.ReplaceEdit(this.commands, this.index));
+		this.replace(CommandVector.EMPTY, new SpatialIndex());
+	}
+	
+	/**
+	 * Put command on top of the others, as a change to undo. Ends any edit,
+	 * so undo finds command on top.
+	 * @param command
+	 */
+	public void addCommand(PaintCommand command){
+		this.endEdit();
+		this.append(command);
+		this.history.record(new History.AddEdit(command));
+	}
+	
+	/**
+	 * Put commands, in order, on top of the others, as one change to undo,
+	 * reported as one BATCH event.
+	 * @param commands detached, see PaintCommand.copy
+	 */
+	public void addCommands(List<PaintCommand> commands){
+		this.endEdit();
+		if(commands.isEmpty())return;
+		this.beginBatch();
+		try {
+			for(PaintCommand c: commands){
+				this.append(c);
+			}
+		} finally {
+			this.endBatch();
+		}
+		this.history.record(new History.AddAllEdit(new ArrayList<PaintCommand>(commands)));
+	}
+	
+	/**
+	 * Remove those of commands that are in this, wherever they are, as one
+	 * change to undo, reported as one BATCH event. Only the references are
+	 * moved up over the gaps, the commands themselves are not copied.
+	 * @param commands
+	 */
+	public void removeCommands(Collection<PaintCommand> commands){
+		this.endEdit();
+		Set<PaintCommand> wanted = Collections.newSetFromMap(new IdentityHashMap<PaintCommand, Boolean>());
+		wanted.addAll(commands);
+		ArrayList<PaintCommand> removed = new ArrayList<PaintCommand>();
+		int[] positions = new int[wanted.size()];
+		int i = 0;
 		for(PaintCommand c: this.commands){
-			c.deleteObserver(this);
+			if(wanted.contains(c)){
+				positions[removed.size()] = i;
+				removed.add(c);
+			}
+			i++;
 		}
-		this.commands.clear();
-		this.setChanged();
-		this.notifyObservers();
+		if(removed.isEmpty())return;
+		PaintCommand[] r = removed.toArray(new PaintCommand[removed.size()]);
+		positions = Arrays.copyOf(positions, r.length);
+		this.history.record(new History.RemoveEdit(r, positions, this.remove(r, positions)));
 	}
 	
-	public void addCommand(PaintCommand command){
-		this.commands.add(command);
-		command.addObserver(this);
-		this.setChanged();
-		this.notifyObservers();
+	/**
+	 * Remove removed, which are at positions, ascending, in the commands of this.
+	 * @return the places they had in the z order of the index, for restore
+	 */
+	long[] remove(PaintCommand[] removed, int[] positions){
+		ArrayList<PaintCommand> kept = new ArrayList<PaintCommand>(this.commands.size()-removed.length);
+		int i = 0, j = 0;
+		for(PaintCommand c: this.commands){
+			if(j<positions.length && positions[j]==i){
+				j++;
+			} else {
+				kept.add(c);
+			}
+			i++;
+		}
+		this.commands = CommandVector.of(kept);
+		long[] orders = new long[removed.length];
+		this.beginBatch();
+		try {
+			for(int k=0;k<removed.length;k++){
+				orders[k] = this.index.remove(removed[k]);
+				removed[k].setModel(null);
+				this.fire(PaintEvent.removed(removed[k]));
+			}
+			this.deselect(removed);
+		} finally {
+			this.endBatch();
+		}
+		return orders;
+	}
+	
+	/**
+	 * Put back removed, as returned by remove, at positions, ascending, in
+	 * the commands of this and orders in the z order of the index.
+	 */
+	void restore(PaintCommand[] removed, int[] positions, long[] orders){
+		ArrayList<PaintCommand> all = new ArrayList<PaintCommand>(this.commands.size()+removed.length);
+		int j = 0;
+		for(PaintCommand c: this.commands){
+			while(j<positions.length && positions[j]==all.size()){
+				all.add(removed[j++]);
+			}
+			all.add(c);
+		}
+		while(j<removed.length){
+			all.add(removed[j++]);
+		}
+		this.commands = CommandVector.of(all);
+		this.beginBatch();
+		try {
+			for(int k=0;k<removed.length;k++){
+				this.index.insert(removed[k], orders[k]);
+				removed[k].setModel(this);
+				this.fire(PaintEvent.added(removed[k]));
+			}
+		} finally {
+			this.endBatch();
+		}
+	}
+	
+	/**
+	 * Put command on top of the others, and tell our listeners.
+	 * @param command
+	 */
+	void append(PaintCommand command){
+		this.commands = this.commands.plus(command);
+		this.index.insert(command);
+		command.setModel(this);
+		this.fire(PaintEvent.added(command));
+	}
+	
+	/**
+	 * Put commands, the next part of a file being loaded, on top of the others,
+	 * reported as one BATCH event. A command being edited stays on top, and
+	 * stays being edited, so a stroke drawn while the file loads is not cut short.
+	 * As for setCommands, the loaded drawing is not undone, so the history is
+	 * cleared, all but the command being edited.
+	 * @param commands
+	 */
+	void appendAll(List<PaintCommand> commands){
+		PaintCommand editing = this.editing;
+		if(editing!=null){
+			// Lifted off silently, the view keeps drawing it on the overlay
+			this.commands = this.commands.minusLast();
+			this.index.remove(editing);
+		}
+		this.beginBatch();
+		try {
+			for(PaintCommand c: commands){
+				this.append(c);
+			}
+		} finally {
+			this.endBatch();
+		}
+		this.history.clear();
+		if(editing!=null){
+			this.commands = this.commands.plus(editing);
+			this.index.insert(editing);
+			this.history.record(new History.AddEdit(editing));
+		}
+	}
+	
+	/**
+	 * Remove command, which is on top of the others, and tell our listeners.
+	 * @param command
+	 */
+	void removeLast(PaintCommand command){
+		int n = this.commands.size();
+		if(n==0 || this.commands.get(n-1)!=command)throw new IllegalStateException("removeLast of a command not on top");
+		if(command==this.editing)this.editing=null;
+		this.commands = this.commands.minusLast();
+		this.index.remove(command);
+		command.setModel(null);
+		this.fire(PaintEvent.removed(command));
+		this.deselect(command);
+	}
+	
+	/**
+	 * Make commands, indexed by index, the commands of this, and have our listeners redraw everything.
+	 * @param commands
+	 * @param index
+	 */
+	void replace(CommandVector commands, SpatialIndex index){
+		this.editing = null;
+		for(PaintCommand c: this.commands){
+			c.setModel(null);
+		}
+		this.commands = commands;
+		this.index = index;
+		for(PaintCommand c: commands){
+			c.setModel(this);
+		}
+		this.selection = new ArrayList<PaintCommand>();
+		this.fire(PaintEvent.reset());
 	}
 	
-	private ArrayList<PaintCommand> commands = new ArrayList<PaintCommand>();
+	/**
+	 * Replace all commands of this by commands, in a way that can be undone.
+	 * @param commands
+	 */
+	void replaceCommands(List<PaintCommand> commands){
+		this.endEdit();
+		this.history.record(new History.ReplaceEdit(this.commands, this.index));
+		CommandVector vector = CommandVector.of(commands);
+		SpatialIndex index = new SpatialIndex();
+		index.rebuild(vector);
+		this.replace(vector, index);
+	}
+	
+	SpatialIndex getIndex(){
+		return this.index;
+	}
+	
+	/**
+	 * Undo the most recent change to this that has not been undone.
+	 * @return whether there was one
+	 */
+	public boolean undo(){
+		this.endEdit();
+		this.beginBatch();
+		try {
+			return this.history.undo(this);
+		} finally {
+			this.endBatch();
+		}
+	}
+	
+	/**
+	 * Redo the most recently undone change to this.
+	 * @return whether there was one
+	 */
+	public boolean redo(){
+		this.endEdit();
+		this.beginBatch();
+		try {
+			return this.history.redo(this);
+		} finally {
+			this.endBatch();
+		}
+	}
+	
+	public boolean canUndo(){
+		return this.history.canUndo();
+	}
+	
+	public boolean canRedo(){
+		return this.history.canRedo();
+	}
+	
+	/**
+	 * Add command as the command being edited. Until endEdit, a view can draw it
+	 * on its own, as changes to it are reported as CHANGED events for getEditing,
+	 * and it is left out of executeAll and execute.
+	 * @param command
+	 */
+	public void beginEdit(PaintCommand command){
+		this.endEdit();
+		this.commands = this.commands.plus(command);
+		this.index.insert(command);
+		command.setModel(this);
+		this.editing = command;
+		this.history.record(new History.AddEdit(command)); // undone whole, with its edits
+		this.fire(PaintEvent.editStarted(command));
+	}
+	
+	/**
+	 * The command being edited is finished, commit it with the others.
+	 */
+	public void endEdit(){
+		if(this.editing==null)return;
+		PaintCommand command = this.editing;
+		this.editing = null;
+		this.fire(PaintEvent.editEnded(command));
+	}
+	
+	/**
+	 * @return the command being edited, null if there is none
+	 */
+	public PaintCommand getEditing(){
+		return this.editing;
+	}
+	
+	/**
+	 * Make commands, those of them in this, the selection, which Cut and Copy work on.
+	 * @param commands
+	 */
+	public void select(Collection<PaintCommand> commands){
+		IdentityHashMap<PaintCommand, Long> orders = new IdentityHashMap<PaintCommand, Long>();
+		ArrayList<PaintCommand> selection = new ArrayList<PaintCommand>(commands.size());
+		boolean sorted = true; // commands often come from a query, already in drawing order
+		long last = -1;
+		for(PaintCommand c: commands){
+			long order = this.index.orderOf(c);
+			if(order<0 || orders.put(c, order)!=null)continue;
+			sorted &= order>last;
+			last = order;
+			selection.add(c);
+		}
+		if(!sorted)selection.sort((a, b) -> Long.compare(orders.get(a), orders.get(b)));
+		this.selection = selection;
+		this.fire(PaintEvent.selectionChanged());
+	}
+	
+	/**
+	 * @return the selected commands, in drawing order. Copy the list to keep it, it follows the selection.
+	 */
+	public List<PaintCommand> getSelection(){
+		return Collections.unmodifiableList(this.selection);
+	}
+	
+	/**
+	 * Leave commands, which are no longer in this, out of the selection.
+	 */
+	private void deselect(PaintCommand[] commands){
+		if(this.selection.isEmpty())return;
+		Set<PaintCommand> gone = Collections.newSetFromMap(new IdentityHashMap<PaintCommand, Boolean>());
+		gone.addAll(Arrays.asList(commands));
+		if(!this.selection.removeIf(gone::contains))return;
+		this.fire(PaintEvent.selectionChanged());
+	}
+	
+	/**
+	 * Leave command, which was on top of the others and is no longer in this, out of the selection.
+	 * Being on top, it can only be the last selected.
+	 */
+	private void deselect(PaintCommand command){
+		int last = this.selection.size()-1;
+		if(last<0 || this.selection.get(last)!=command)return;
+		this.selection.remove(last);
+		this.fire(PaintEvent.selectionChanged());
+	}
+	
+	/**
+	 * @param selecting the rubber band being dragged out to select in, Rect.EMPTY if none
+	 */
+	public void setSelecting(Rect selecting){
+		this.selecting = selecting;
+		this.fire(PaintEvent.selectionChanged());
+	}
+	
+	public Rect getSelecting(){
+		return this.selecting;
+	}
+	
+	/**
+	 * @param x
+	 * @param y
+	 * @param tolerance in pixels
+	 * @return the topmost command (x,y) is on, give or take tolerance, other than
+	 * the one being edited. null if there is none. Only commands whose bounds are
+	 * near (x,y) are looked at.
+	 */
+	public PaintCommand hitTest(int x, int y, int tolerance){
+		List<PaintCommand> near = this.index.query(new Rect(x-tolerance, y-tolerance, x+tolerance+1, y+tolerance+1));
+		for(int i=near.size()-1;i>=0;i--){
+			PaintCommand c = near.get(i);
+			if(c!=this.editing && c.hitTest(x, y, tolerance))return c;
+		}
+		return null;
+	}
+	
+	/**
+	 * @param region
+	 * @return the commands, other than the one being edited, lying wholly inside region, in drawing order
+	 */
+	public List<PaintCommand> getCommandsWithin(Rect region){
+		List<PaintCommand> within = new ArrayList<PaintCommand>();
+		for(PaintCommand c: this.index.query(region)){
+			if(c!=this.editing && region.contains(c.getBounds()))within.add(c);
+		}
+		return within;
+	}
+	
+	/**
+	 * Immutable, every change makes a new one sharing most of the old, so
+	 * other threads can read it at any time
+	 */
+	private volatile CommandVector commands = CommandVector.EMPTY;
+	private SpatialIndex index = new SpatialIndex(); // kept in sync with commands
+	private PaintCommand editing; // see beginEdit
+	private ArrayList<PaintCommand> selection = new ArrayList<PaintCommand>(); // see select, in drawing order
+	private Rect selecting = Rect.EMPTY; // see setSelecting
+	private History history = new History();
 
 	public void executeAll(GraphicsContext g) {
+		this.executeAll(new FXRenderer(g));
+	}
+	
+	public void executeAll(Renderer g) {
 		for(PaintCommand c: this.commands){
-			c.execute(g);
+			if(c!=this.editing){
+				c.execute(g);
+			}
 		}
 	}
 	
-	public ArrayList<PaintCommand> getCommands(){
+	/**
+	 * Execute, in order, only those commands that draw inside region.
+	 * The command being edited is not executed.
+	 * @param g
+	 * @param region the area of the canvas being redrawn
+	 */
+	public void execute(GraphicsContext g, Rect region) {
+		this.execute(new FXRenderer(g), region);
+	}
+	
+	public void execute(Renderer g, Rect region) {
+		for(PaintCommand c: this.index.query(region)){
+			if(c!=this.editing){
+				c.execute(g);
+			}
+		}
+	}
+	
+	/**
+	 * @return the commands, in drawing order, as they are now. The list does not change.
+	 */
+	public List<PaintCommand> getCommands(){
 		return this.commands;
 	}
 	
-	public void setCommands(ArrayList<PaintCommand> temp){
-		this.commands = temp;
+	CommandVector getCommandVector(){
+		return this.commands;
+	}
+	
+	/**
+	 * @param region
+	 * @return the commands that draw inside region, in drawing order
+	 */
+	public List<PaintCommand> getCommands(Rect region){
+		return this.index.query(region);
+	}
+	
+	/**
+	 * Make temp the commands of this, as a new drawing: the history is cleared,
+	 * and listeners get a single RESET event however many commands there are.
+	 * @param temp
+	 */
+	public void setCommands(List<PaintCommand> temp){
+		CommandVector vector = CommandVector.of(temp);
+		SpatialIndex index = new SpatialIndex();
+		index.rebuild(vector);
+		this.replace(vector, index);
+		this.history.clear(); // a new drawing, earlier ones are not undone into it
 	}
 	
 	public void setError(String errorMessage, boolean error) {
@@ -67,11 +616,24 @@ public class PaintModel extends Observable implements Observer {
 	}
 	
 	/**
-	 * We Observe our model components, the PaintCommands
+	 * command, one of ours, is about to change. Unless it is being edited, the
+	 * change is recorded in the history, so it can be undone.
+	 * @param command
+	 */
+	void commandChanging(PaintCommand command){
+		if(command!=this.editing){
+			this.history.record(new History.StateEdit(command, command.getState()));
+		}
+	}
+	
+	/**
+	 * command, one of ours, has changed, reindex it and tell our listeners.
+	 * @param command
+	 * @param before its bounds before the change
+	 * @param dirty the area of the canvas the change touched
 	 */
-	@Override
-	public void update(Observable o, Object arg) {
-		this.setChanged();
-		this.notifyObservers();
+	void commandChanged(PaintCommand command, Rect before, Rect dirty){
+		this.index.update(command);
+		this.fire(PaintEvent.changed(command, before, dirty));
 	}
 }
@@ -0,0 +1,125 @@
+package ca.utoronto.utm.paint;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * RESPONDS-TO PaintModel, selecting and Cut, Copy and Paste
+ *
+ */
+public class PaintModelTest {
+
+	private static final Rect EVERYWHERE = new Rect(-10000, -10000, 10000, 10000);
+
+	private CircleCommand circle(int x, int y, int radius, boolean fill) {
+		CircleCommand circle = new CircleCommand(new Point(x, y), radius);
+		circle.setFill(fill);
+		return circle;
+	}
+
+	private RectangleCommand rectangle(int x1, int y1, int x2, int y2, boolean fill) {
+		RectangleCommand rectangle = new RectangleCommand(new Point(x1, y1), new Point(x2, y2));
+		rectangle.setFill(fill);
+		return rectangle;
+	}
+
+	/**
+	 * Check that the spatial index of paintModel has the same commands, in the same order, as its list.
+	 */
+	private void assertIndexed(String message, PaintModel paintModel) {
+		assertEquals(message + ": index", paintModel.getCommands(), paintModel.getIndex().query(EVERYWHERE));
+	}
+
+	@Test
+	public void hitTestPoint() {
+		PaintModel paintModel = new PaintModel();
+		RectangleCommand under = this.rectangle(0, 0, 100, 100, true);
+		CircleCommand over = this.circle(50, 50, 10, true);
+		CircleCommand ring = this.circle(-200, -200, 40, false);
+		paintModel.addCommands(Arrays.asList(under, over, ring));
+		assertSame("Topmost of two", over, paintModel.hitTest(50, 50, 0));
+		assertSame("Only the one under", under, paintModel.hitTest(90, 90, 0));
+		assertNull("Nothing there", paintModel.hitTest(500, 500, 3));
+		assertSame("On the outline, at negative coordinates", ring, paintModel.hitTest(-200, -240, 0));
+		assertSame("Near the outline, within tolerance", ring, paintModel.hitTest(-200, -245, 5));
+		assertNull("Inside an outline", paintModel.hitTest(-200, -200, 3));
+	}
+
+	@Test
+	public void hitTestSkipsEditing() {
+		PaintModel paintModel = new PaintModel();
+		RectangleCommand under = this.rectangle(0, 0, 100, 100, true);
+		paintModel.addCommand(under);
+		RectangleCommand editing = this.rectangle(0, 0, 100, 100, true);
+		paintModel.beginEdit(editing);
+		assertSame("The command being edited is not picked", under, paintModel.hitTest(50, 50, 0));
+	}
+
+	@Test
+	public void rubberBand() {
+		PaintModel paintModel = new PaintModel();
+		CircleCommand inside = this.circle(20, 20, 5, true);
+		RectangleCommand across = this.rectangle(40, 40, 120, 120, false);
+		SquiggleCommand alsoInside = new SquiggleCommand();
+		alsoInside.add(60, 10);
+		alsoInside.add(70, 30);
+		paintModel.addCommands(Arrays.asList(inside, across, alsoInside));
+		assertEquals("Only those wholly inside, in drawing order",
+				Arrays.asList(inside, alsoInside), paintModel.getCommandsWithin(new Rect(0, 0, 100, 100)));
+		assertEquals("Everything", paintModel.getCommands(), paintModel.getCommandsWithin(EVERYWHERE));
+		assertTrue("Nothing", paintModel.getCommandsWithin(new Rect(500, 500, 600, 600)).isEmpty());
+	}
+
+	@Test
+	public void cutUndoRedo() {
+		PaintModel paintModel = new PaintModel();
+		List<PaintCommand> drawn = new ArrayList<PaintCommand>();
+		for (int i = 0; i < 10; i++) {
+			drawn.add(this.circle(i * 30, 0, 10, true));
+		}
+		paintModel.addCommands(drawn);
+		List<PaintCommand> before = new ArrayList<PaintCommand>(paintModel.getCommands());
+		paintModel.select(Arrays.asList(drawn.get(2), drawn.get(5), drawn.get(9)));
+		assertEquals("Selected", 3, paintModel.getSelection().size());
+
+		paintModel.removeCommands(paintModel.getSelection()); // Cut
+		assertEquals("Cut", 7, paintModel.getCommands().size());
+		assertFalse("Cut is gone", paintModel.getCommands().contains(drawn.get(5)));
+		assertTrue("Cut is deselected", paintModel.getSelection().isEmpty());
+		assertNull("Cut is not hit", paintModel.hitTest(150, 0, 0));
+		this.assertIndexed("Cut", paintModel);
+
+		assertTrue("Undo", paintModel.undo());
+		assertEquals("Undo puts them back in place", before, paintModel.getCommands());
+		assertSame("Undone is hit again", drawn.get(5), paintModel.hitTest(150, 0, 0));
+		this.assertIndexed("Undo", paintModel);
+
+		assertTrue("Redo", paintModel.redo());
+		assertEquals("Redo", 7, paintModel.getCommands().size());
+		this.assertIndexed("Redo", paintModel);
+	}
+
+	@Test
+	public void pasteUndo() {
+		PaintModel paintModel = new PaintModel();
+		RectangleCommand original = this.rectangle(0, 0, 10, 10, true);
+		paintModel.addCommand(original);
+		List<PaintCommand> pasted = new ArrayList<PaintCommand>();
+		pasted.add(original.copy()); // Copy, then Paste
+		pasted.add(original.copy());
+		paintModel.addCommands(pasted);
+		assertEquals("Pasted", 3, paintModel.getCommands().size());
+		assertNotSame("Pasted is a copy", original, paintModel.getCommands().get(1));
+		assertSame("Pasted on top", pasted.get(1), paintModel.hitTest(5, 5, 0));
+		this.assertIndexed("Pasted", paintModel);
+
+		assertTrue("Undo", paintModel.undo());
+		assertEquals("Undo removes all of the paste", Arrays.asList(original), paintModel.getCommands());
+		assertSame("Original is hit again", original, paintModel.hitTest(5, 5, 0));
+		this.assertIndexed("Undo", paintModel);
+	}
+}
@@ -1,31 +1,121 @@
 package ca.utoronto.utm.paint;
 
-import java.util.Observable;
-import java.util.Observer;
+import java.util.List;
 
+import javafx.animation.AnimationTimer;
 import javafx.event.EventHandler;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
 import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
 
-class PaintPanel extends StackPane implements Observer, EventHandler<MouseEvent> {
+class PaintPanel extends StackPane implements PaintListener, EventHandler<MouseEvent> {
 
 	private PaintModel model; 
-	private Canvas canvas;
+	private Canvas canvas; // committed commands, blitted from tiles, only redrawn where they change
+	private TileCache tiles = new TileCache();
+	private Canvas overlay; // the command being edited, redrawn on every change to it
+	private Rect overlayDrawn = Rect.EMPTY; // what is currently drawn on the overlay, in document coordinates
+	private boolean selectionDrawn; // the overlay also shows the selection, see paintSelection
+	private static final Color SELECTION_COLOR = Color.rgb(0, 120, 215);
 	private ShapeManipulatorStrategy strategy;
 	
+	/**
+	 * The document is unbounded, the canvases are the size of this and show
+	 * the part of it the viewport says. Dragging with the middle button, or
+	 * scrolling, pans, scrolling with the shortcut key down zooms.
+	 */
+	private Viewport viewport = new Viewport();
+	private boolean panning; // middle button is down
+	private double panX, panY; // last mouse position while panning
+	private static final double ZOOM_PER_SCROLL_PIXEL = 1.005;
+	
+	/**
+	 * Model changes are collected here and painted together, at most once per 
+	 * JavaFX pulse, so several changes between two frames cost one repaint.
+	 */
+	private Rect dirty = Rect.EMPTY; // area of canvas to repaint
+	private boolean overlayDirty; // overlay needs repainting
+	private boolean allDirty; // everything needs repainting
+	private boolean scheduled; // pulse is running
+	private AnimationTimer pulse = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			PaintPanel.this.paintPending();
+		}
+	};
+	
 	public PaintPanel(PaintModel model) {
 
+		this.setPrefSize(500, 500);
 		this.canvas = new Canvas(500, 500);
+		this.overlay = new Canvas(500, 500);
 		this.getChildren().add(this.canvas);
-		// The canvas is transparent, so the background color of the
+		this.getChildren().add(this.overlay);
+		// The canvases are transparent, so the background color of the
 		// containing pane serves as the background color of the canvas.
 		this.setStyle("-fx-background-color: white");
-		this.canvas.addEventHandler(MouseEvent.ANY, this);
+		this.overlay.addEventHandler(MouseEvent.ANY, this);
+		this.overlay.addEventHandler(ScrollEvent.SCROLL, e -> {
+			if(e.isShortcutDown()){
+				this.viewport.zoomAt(e.getX(), e.getY(), Math.pow(ZOOM_PER_SCROLL_PIXEL, e.getDeltaY()));
+			} else {
+				this.viewport.panBy(e.getDeltaX(), e.getDeltaY());
+			}
+			this.viewChanged();
+		});
 		this.setPaintModel(model);
 		
 	}
+	
+	/**
+	 * Keep the canvases the size of this, so what is drawn depends on what is on screen.
+	 */
+	@Override
+	protected void layoutChildren() {
+		super.layoutChildren();
+		double width = Math.max(1, this.getWidth()), height = Math.max(1, this.getHeight());
+		if(width!=this.canvas.getWidth() || height!=this.canvas.getHeight()){
+			this.canvas.setWidth(width);
+			this.canvas.setHeight(height);
+			this.overlay.setWidth(width);
+			this.overlay.setHeight(height);
+			this.tiles.fit(width, height);
+			this.viewChanged();
+		}
+	}
+	
+	/**
+	 * Multiply the zoom by factor, about the centre of this.
+	 * @param factor
+	 */
+	public void zoom(double factor) {
+		this.viewport.zoomAt(this.getWidth()/2, this.getHeight()/2, factor);
+		this.viewChanged();
+	}
+	
+	/**
+	 * Show the document from its origin, unzoomed.
+	 */
+	public void resetView() {
+		this.viewport.reset();
+		this.viewChanged();
+	}
+	
+	private void viewChanged() {
+		this.allDirty = true;
+		this.schedule();
+	}
+	
+	/**
+	 * @return the area of the document on screen
+	 */
+	private Rect visible() {
+		return this.viewport.getVisible(this.canvas.getWidth(), this.canvas.getHeight());
+	}
 
 	/**
 	 * Hookup the paint model to this 
@@ -34,31 +124,160 @@ class PaintPanel extends StackPane implements Observer, EventHandler<MouseEvent>
 	public void setPaintModel(PaintModel model) {
 		if(model==null)return;
 		if(this.model!=null) {
-			this.model.deleteObserver(this);
+			this.model.removePaintListener(this);
 		}
 		this.model = model;
+		this.tiles.clear();
 		this.setShapeManipulatorStrategy(new ShapeManipulatorStrategy(this.model)); // set to the empty strategy
-		this.model.addObserver(this);
-		this.repaint();
+		this.model.addPaintListener(this);
+		this.allDirty = true;
+		this.schedule();
 	}
 	
+	/**
+	 * Make sure paintPending runs at the next pulse.
+	 */
+	private void schedule() {
+		if(this.scheduled)return;
+		this.scheduled = true;
+		this.pulse.start();
+	}
+	
+	/**
+	 * Paint everything collected since the last frame, then stop the pulse until there is more.
+	 */
+	private void paintPending() {
+		this.pulse.stop();
+		this.scheduled = false;
+		if(this.allDirty){
+			this.repaint();
+		} else {
+			this.repaint(this.dirty);
+			if(this.overlayDirty){
+				this.repaintOverlay();
+			}
+		}
+		this.allDirty = false;
+		this.overlayDirty = false;
+		this.dirty = Rect.EMPTY;
+	}
+	
+	/**
+	 * Redraw everything on screen, from cached tiles where there are any.
+	 * Only commands in view are executed.
+	 */
 	public void repaint() {
 		GraphicsContext g = this.canvas.getGraphicsContext2D();
-		g.clearRect(0, 0, this.getWidth(), this.getHeight());
-		this.model.executeAll(g);
+		g.setTransform(1, 0, 0, 1, 0, 0);
+		g.clearRect(0, 0, this.canvas.getWidth(), this.canvas.getHeight());
+		this.tiles.paint(g, this.model, this.viewport, this.canvas.getWidth(), this.canvas.getHeight(), null);
+		g = this.overlay.getGraphicsContext2D();
+		g.setTransform(1, 0, 0, 1, 0, 0);
+		g.clearRect(0, 0, this.overlay.getWidth(), this.overlay.getHeight());
+		this.overlayDrawn = Rect.EMPTY;
+		this.repaintOverlay();
+	}
+	
+	/**
+	 * Redraw the command being edited, and the selection, on their own layer above the committed commands.
+	 */
+	private void repaintOverlay() {
+		GraphicsContext g = this.overlay.getGraphicsContext2D();
+		if(this.selectionDrawn){
+			// Outlines may be anywhere
+			g.setTransform(1, 0, 0, 1, 0, 0);
+			g.clearRect(0, 0, this.overlay.getWidth(), this.overlay.getHeight());
+		}
+		this.viewport.apply(g);
+		g.clearRect(overlayDrawn.left, overlayDrawn.top, overlayDrawn.getWidth(), overlayDrawn.getHeight());
+		this.selectionDrawn = this.paintSelection(g);
+		PaintCommand editing = this.model.getEditing();
+		if(editing==null){
+			this.overlayDrawn = Rect.EMPTY;
+			return;
+		}
+		editing.execute(g);
+		this.overlayDrawn = editing.getBounds();
+	}
+	
+	/**
+	 * Outline, a screen pixel wide, the selected commands in view, and the rubber band being dragged out.
+	 * @param g draws in document coordinates
+	 * @return whether anything was drawn
+	 */
+	private boolean paintSelection(GraphicsContext g) {
+		List<PaintCommand> selection = this.model.getSelection();
+		Rect selecting = this.model.getSelecting();
+		if(selection.isEmpty() && selecting.isEmpty())return false;
+		Rect visible = this.visible();
+		g.setLineWidth(1/this.viewport.getScale());
+		g.setStroke(SELECTION_COLOR);
+		for(PaintCommand c: selection){
+			Rect bounds = c.getBounds();
+			if(bounds.intersects(visible)){
+				g.strokeRect(bounds.left, bounds.top, bounds.getWidth(), bounds.getHeight());
+			}
+		}
+		if(!selecting.isEmpty()){
+			g.strokeRect(selecting.left, selecting.top, selecting.getWidth(), selecting.getHeight());
+		}
+		g.setLineWidth(1);
+		return true;
+	}
+	
+	/**
+	 * Redraw only the tiles of the canvas under the dirty area, which paintChanged has
+	 * already dropped from the cache, replaying just the commands that draw inside them.
+	 * @param dirty in document coordinates
+	 */
+	public void repaint(Rect dirty) {
+		dirty = dirty.intersect(this.visible());
+		if(dirty.isEmpty())return;
+		GraphicsContext g = this.canvas.getGraphicsContext2D();
+		g.setTransform(1, 0, 0, 1, 0, 0);
+		this.tiles.paint(g, this.model, this.viewport, this.canvas.getWidth(), this.canvas.getHeight(), dirty);
 	}
 
+	/**
+	 * Changes to the command being edited, or to the selection, only touch the overlay, anything
+	 * else drops the tiles under the area it touched.
+	 */
 	@Override
-	public void update(Observable o, Object arg) {
-		this.repaint();
+	public void paintChanged(PaintEvent event) {
+		Rect dirty = event.getDirty();
+		if(event.getType()==PaintEvent.Type.EDIT_STARTED || event.getType()==PaintEvent.Type.SELECTION
+				|| (event.getType()==PaintEvent.Type.CHANGED && event.getCommand()==this.model.getEditing())){
+			this.overlayDirty = true;
+		} else if(dirty!=null){
+			this.dirty = this.dirty.union(dirty);
+			this.tiles.invalidate(dirty);
+			this.overlayDirty = true;
+		} else {
+			this.tiles.clear();
+			this.allDirty = true;
+		}
+		this.schedule();
 	}
 
 	@Override
 	public void handle(MouseEvent event) {
-		this.strategy.handle(event);
+		if(event.getEventType()==MouseEvent.MOUSE_PRESSED && event.getButton()==MouseButton.MIDDLE){
+			this.panning = true;
+		} else if(!this.panning){
+			this.strategy.handle(event);
+			return;
+		} else if(event.getEventType()==MouseEvent.MOUSE_DRAGGED){
+			this.viewport.panBy(event.getX()-this.panX, event.getY()-this.panY);
+			this.viewChanged();
+		} else if(event.getEventType()==MouseEvent.MOUSE_RELEASED && event.getButton()==MouseButton.MIDDLE){
+			this.panning = false;
+		}
+		this.panX = event.getX();
+		this.panY = event.getY();
 	}
 	public void setShapeManipulatorStrategy(ShapeManipulatorStrategy strategy) {
 		this.strategy = strategy;
+		strategy.setViewport(this.viewport);
 	}
 }
 
@@ -0,0 +1,149 @@
+package ca.utoronto.utm.paint;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Renders Paint Save Files to PNG images without a window, through an
+ * AWTRenderer, so it runs headless, for example to make thumbnails on a
+ * server. Files are converted in parallel, on all cores.
+ *
+ * Usage: PaintToPng [-o directory] [-max pixels] file-or-directory ...
+ *
+ * Each file, and each file directly in a directory, is rendered to a PNG of
+ * the same name with ".png" added, next to it or in the -o directory. The
+ * image covers the drawing from the document origin, shrunk so neither side
+ * is longer than -max, 4096 unless given, 0 for no limit. However large the
+ * drawing, the image is shrunk to at most MAX_PIXELS, so one file cannot take
+ * the memory the others are being converted in.
+ * RESPONDS-TO the command line
+ */
+public class PaintToPng {
+	private File outputDirectory; // null to write next to the input
+	private int maxSize; // longest side of an image, 0 for no limit
+
+	static final int DEFAULT_MAX_SIZE = 4096;
+	/**
+	 * Most pixels in an image, 4 bytes each
+	 */
+	static final long MAX_PIXELS = 1L << 26;
+
+	public PaintToPng(File outputDirectory, int maxSize) {
+		this.outputDirectory = outputDirectory;
+		this.maxSize = maxSize;
+	}
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		File outputDirectory = null;
+		int maxSize = DEFAULT_MAX_SIZE;
+		List<File> files = new ArrayList<File>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-o")) {
+					outputDirectory = new File(args[++i]);
+				} else if (args[i].equals("-max")) {
+					maxSize = Integer.parseInt(args[++i]);
+				} else {
+					File f = new File(args[i]);
+					if (f.isDirectory()) {
+						File[] inDirectory = f.listFiles(g -> g.isFile() && !g.getName().startsWith(".") && !g.getName().endsWith(".png"));
+						if (inDirectory != null) files.addAll(Arrays.asList(inDirectory));
+					} else {
+						files.add(f);
+					}
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+			files.clear();
+		}
+		if (files.isEmpty()) {
+			System.err.println("Usage: PaintToPng [-o directory] [-max pixels] file-or-directory ...");
+			System.exit(2);
+		}
+		if (outputDirectory != null) outputDirectory.mkdirs();
+
+		PaintToPng converter = new PaintToPng(outputDirectory, maxSize);
+		long failed = files.parallelStream().filter(f -> !converter.convert(f)).count();
+		System.out.println((files.size() - failed) + " rendered, " + failed + " failed");
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Render file to a PNG.
+	 * @param file a Paint Save File of either version
+	 * @return whether it was rendered, the reason it was not is printed
+	 */
+	public boolean convert(File file) {
+		try {
+			return this.write(file);
+		} catch (RuntimeException | OutOfMemoryError e) {
+			// Only this file fails, the others go on
+			System.err.println(file + ": " + e);
+			return false;
+		}
+	}
+
+	private boolean write(File file) {
+		PaintModel paintModel = new PaintModel();
+		if (PaintBinaryFileParser.isBinary(file)) {
+			new PaintBinaryFileParser().parse(file, paintModel);
+		} else {
+			new ParallelPaintFileParser().parse(file, paintModel);
+		}
+		if (paintModel.getError()) {
+			System.err.println(file + ": " + paintModel.getErrorMessage());
+			return false;
+		}
+		File directory = this.outputDirectory != null ? this.outputDirectory : file.getAbsoluteFile().getParentFile();
+		File png = new File(directory, file.getName() + ".png");
+		try {
+			ImageIO.write(render(paintModel, this.maxSize), "png", png);
+		} catch (IOException e) {
+			System.err.println(png + ": " + e.getMessage());
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param paintModel
+	 * @param maxSize longest side of the image, 0 for no limit
+	 * @return an image of the commands of paintModel on white, from the document
+	 * origin (or further up and left if commands are there) to the lower right of the drawing,
+	 * of at most MAX_PIXELS
+	 */
+	public static BufferedImage render(PaintModel paintModel, int maxSize) {
+		Rect bounds = new Rect(0, 0, 1, 1);
+		for (PaintCommand c : paintModel.getCommands()) {
+			bounds = bounds.union(c.getBounds());
+		}
+		double scale = 1;
+		long longest = Math.max(bounds.getWidth(), bounds.getHeight());
+		if (maxSize > 0 && longest > maxSize) scale = (double) maxSize / longest;
+		double pixels = (double) bounds.getWidth() * bounds.getHeight() * scale * scale;
+		if (pixels > MAX_PIXELS) scale *= Math.sqrt(MAX_PIXELS / pixels);
+		int width = Math.max(1, (int) Math.ceil(bounds.getWidth() * scale));
+		int height = Math.max(1, (int) Math.ceil(bounds.getHeight() * scale));
+
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		try {
+			g.setColor(java.awt.Color.WHITE);
+			g.fillRect(0, 0, width, height);
+			g.scale(scale, scale);
+			g.translate(-bounds.left, -bounds.top);
+			paintModel.executeAll(new AWTRenderer(g));
+		} finally {
+			g.dispose();
+		}
+		return image;
+	}
+}
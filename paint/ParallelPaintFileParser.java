@@ -0,0 +1,240 @@
+package ca.utoronto.utm.paint;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parse a file in Version 1.0 PaintSaveFile format on all cores. Shape blocks
+ * are independent of each other, so the memory mapped file is split into chunks
+ * starting at a "Circle", "Rectangle" or "Squiggle" line, each chunk is parsed
+ * by its own PaintFileParser on a ForkJoinPool, and the resulting commands are
+ * joined in file order. The result, including the error message and line
+ * number for the first error in the file, is the same as for PaintFileParser.
+ * Small files are simply handed to a PaintFileParser.
+ * Used where a whole file is opened before anything is shown, the View
+ * streams text files in with StreamLoadTask instead.
+ * RESPONDS-TO PaintToPng
+ */
+public class ParallelPaintFileParser {
+	/**
+	 * Files smaller than this are not worth splitting
+	 */
+	private static final long MIN_PARALLEL_SIZE = 1L << 20;
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private static final byte[][] BLOCK_STARTS = { "Circle".getBytes(), "Rectangle".getBytes(), "Squiggle".getBytes() };
+
+	private ForkJoinPool pool;
+	private String errorMessage = "";
+	private Progress progress; // told how parse is going, may be null
+
+	/**
+	 * Below is the state of the parse in progress, shared by its ChunkTasks
+	 */
+	private MappedByteBuffer buffer;
+	private int[] starts; // see split
+	private PaintFileParser[] parsers; // one per chunk
+	private AtomicLong done = new AtomicLong(); // bytes parsed
+	private volatile boolean cancelled;
+
+	public ParallelPaintFileParser() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	public ParallelPaintFileParser(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 *
+	 * @return the error message resulting from an unsuccessful parse
+	 */
+	public String getErrorMessage() {
+		return this.errorMessage;
+	}
+
+	/**
+	 * @param progress told, in bytes, how far parse has got, and able to cancel it. null for no reports.
+	 */
+	void setProgress(Progress progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Parse file as a Paint Save File Format file, see PaintFileParser.
+	 *
+	 * @param file the file to parse
+	 * @param paintModel the paint model to add the commands to
+	 * @return whether the complete file was successfully parsed
+	 */
+	public boolean parse(File file, PaintModel paintModel) {
+		this.errorMessage = "";
+		long size = file.length();
+		if (size < MIN_PARALLEL_SIZE || size > Integer.MAX_VALUE || this.pool.getParallelism() < 2) {
+			return this.parseSequentially(file, paintModel);
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException e) {
+			return this.parseSequentially(file, paintModel); // let it report the problem
+		}
+
+		this.starts = this.split(this.buffer, this.pool.getParallelism() * CHUNKS_PER_THREAD);
+		this.parsers = new PaintFileParser[this.starts.length - 1];
+		this.done.set(0);
+		this.cancelled = false;
+		try {
+			this.pool.invoke(new ChunkTask(0, this.parsers.length));
+		} finally {
+			this.buffer = null;
+		}
+		PaintFileParser[] parsers = this.parsers;
+		this.parsers = null;
+		if (this.cancelled) {
+			this.errorMessage = "Cancelled";
+			paintModel.setError(this.errorMessage, true);
+			return false;
+		}
+
+		// Join the chunks in order, stopping at the first error
+		int lineOffset = 0, count = 0;
+		for (int i = 0; i < parsers.length; i++) {
+			PaintFileParser p = parsers[i];
+			if (p.getErrorLine() > 0) {
+				this.errorMessage = "Error in line " + (lineOffset + p.getErrorLine()) + " " + p.getErrorDetail();
+				paintModel.setError(this.errorMessage, true);
+				return false;
+			}
+			if (i < parsers.length - 1 && p.getState() != 1) {
+				// The chunk ended inside a block, or after the end of file line, so the
+				// error is at the start of the next chunk, in a state only a sequential parse knows
+				return this.parseSequentially(file, paintModel);
+			}
+			lineOffset += p.getLineNumber();
+			count += p.getCommands().size();
+		}
+		ArrayList<PaintCommand> commands = new ArrayList<PaintCommand>(count);
+		for (PaintFileParser p : parsers) {
+			commands.addAll(p.getCommands());
+		}
+		paintModel.setError("", false);
+		paintModel.setCommands(commands);
+		return true;
+	}
+
+	private boolean parseSequentially(File file, PaintModel paintModel) {
+		PaintFileParser parser = new PaintFileParser();
+		parser.setProgress(this.progress);
+		boolean result = parser.parse(file, paintModel);
+		this.errorMessage = parser.getErrorMessage();
+		return result;
+	}
+
+	/**
+	 * Parses the chunks from index lo up to index hi, splitting the work in half until one chunk is left.
+	 */
+	private class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private int lo, hi;
+
+		ChunkTask(int lo, int hi) {
+			this.lo = lo; this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo > 1) {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new ChunkTask(lo, mid), new ChunkTask(mid, hi));
+				return;
+			}
+			PaintFileParser parser = new PaintFileParser();
+			parser.begin(null, lo == 0 ? 0 : 1);
+			parsers[lo] = parser;
+			if (cancelled) return;
+			if (parser.feed(buffer, starts[lo], starts[lo + 1])) {
+				parser.endInput();
+			}
+			long total = starts[starts.length - 1];
+			if (progress != null && !progress.update(done.addAndGet(starts[lo + 1] - starts[lo]), total)) {
+				cancelled = true;
+			}
+		}
+	}
+
+	/**
+	 * @param buffer
+	 * @param chunks the number of chunks wanted
+	 * @return the offsets the chunks start at, followed by the end of buffer.
+	 * Every chunk but the first starts at a line beginning a shape block.
+	 */
+	private int[] split(MappedByteBuffer buffer, int chunks) {
+		int limit = buffer.limit();
+		int[] starts = new int[chunks + 1];
+		int n = 0;
+		starts[n++] = 0;
+		for (int i = 1; i < chunks; i++) {
+			int target = (int) ((long) limit * i / chunks);
+			if (target <= starts[n - 1]) continue;
+			int start = this.nextBlockStart(buffer, target, limit);
+			if (start >= limit) break;
+			if (start > starts[n - 1]) starts[n++] = start;
+		}
+		starts[n++] = limit;
+		int[] result = new int[n];
+		System.arraycopy(starts, 0, result, 0, n);
+		return result;
+	}
+
+	/**
+	 * @return the offset, at or after from, of the first line that is a shape block start,
+	 * or limit if there is none
+	 */
+	private int nextBlockStart(MappedByteBuffer buffer, int from, int limit) {
+		int i = from;
+		while (i < limit) {
+			while (i < limit && !this.isLineStart(buffer, i)) i++;
+			if (i < limit && this.isBlockStart(buffer, i, limit)) return i;
+			if (i < limit) i++;
+		}
+		return limit;
+	}
+
+	/**
+	 * @return whether a line starts at offset i, lines end at \n, \r or \r\n
+	 */
+	private boolean isLineStart(MappedByteBuffer buffer, int i) {
+		if (i == 0) return true;
+		byte previous = buffer.get(i - 1);
+		return previous == '\n' || (previous == '\r' && buffer.get(i) != '\n');
+	}
+
+	/**
+	 * @return whether the line at offset i, white space removed, starts a shape block
+	 */
+	private boolean isBlockStart(MappedByteBuffer buffer, int i, int limit) {
+		byte[] line = new byte[16];
+		int length = 0;
+		for (; i < limit; i++) {
+			byte c = buffer.get(i);
+			if (c == '\n' || c == '\r') break;
+			if (c == ' ' || c == '\t' || c == 0x0B || c == '\f') continue;
+			if (length == line.length) return false;
+			line[length++] = c;
+		}
+		for (byte[] keyword : BLOCK_STARTS) {
+			if (keyword.length != length) continue;
+			int k = 0;
+			while (k < length && keyword[k] == line[k]) k++;
+			if (k == length) return true;
+		}
+		return false;
+	}
+}
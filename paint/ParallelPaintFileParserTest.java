@@ -0,0 +1,175 @@
+package ca.utoronto.utm.paint;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * RESPONDS-TO ParallelPaintFileParser, which must give the same result as PaintFileParser
+ *
+ */
+public class ParallelPaintFileParserTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static ForkJoinPool pool; // split whatever the cores of the machine running the tests
+
+	@BeforeClass
+	public static void startPool() {
+		pool = new ForkJoinPool(4);
+	}
+
+	@AfterClass
+	public static void stopPool() {
+		pool.shutdown();
+	}
+
+	/**
+	 * @return the lines of a file of shapes, well over the size worth splitting
+	 */
+	private List<String> lines() {
+		List<String> lines = new ArrayList<String>();
+		lines.add("Paint Save File Version 1.0");
+		for (int i = 0; i < 24000; i++) {
+			switch (i % 3) {
+			case 0:
+				lines.add("Circle");
+				lines.add("\tcolor:" + (i % 256) + ",2,3");
+				lines.add("\tfilled:true");
+				lines.add("\tcenter:(" + i + "," + (-i) + ")");
+				lines.add("\tradius:" + (i % 50));
+				lines.add("End Circle");
+				break;
+			case 1:
+				lines.add("Rectangle");
+				lines.add("\tcolor:4,5,6");
+				lines.add("\tfilled:false");
+				lines.add("\tp1:(" + i + ",7)");
+				lines.add("\tp2:(8," + i + ")");
+				lines.add("End Rectangle");
+				break;
+			default:
+				lines.add("Squiggle");
+				lines.add("\tcolor:7,8,9");
+				lines.add("\tfilled:false");
+				lines.add("\tpoints");
+				lines.add("\t\tpoint:(" + i + ",1)");
+				lines.add("\t\tpoint:(2," + i + ")");
+				lines.add("\tend points");
+				lines.add("End Squiggle");
+				break;
+			}
+		}
+		lines.add("End Paint Save File");
+		return lines;
+	}
+
+	/**
+	 * Parse lines, joined by separator, with both parsers, and check they agree.
+	 * @return whether the parse succeeded
+	 */
+	private boolean doEquivalenceCase(List<String> lines, String separator, String message) throws IOException {
+		File file = this.folder.newFile();
+		Files.write(file.toPath(), (String.join(separator, lines) + separator).getBytes(StandardCharsets.US_ASCII));
+		assertTrue(message + ": large enough to be split", file.length() > 1 << 20);
+
+		PaintFileParser sequential = new PaintFileParser();
+		PaintModel expected = new PaintModel();
+		boolean expectedResult = sequential.parse(file, expected);
+
+		ParallelPaintFileParser parallel = new ParallelPaintFileParser(pool);
+		PaintModel actual = new PaintModel();
+		assertEquals(message + ": result", expectedResult, parallel.parse(file, actual));
+		assertEquals(message + ": error message", sequential.getErrorMessage(), parallel.getErrorMessage());
+		assertEquals(message + ": model error", expected.getErrorMessage(), actual.getErrorMessage());
+		assertEquals(message + ": commands", expected.getCommands().size(), actual.getCommands().size());
+		for (int i = 0; i < expected.getCommands().size(); i++) {
+			assertEquals(message + ": command " + i, expected.getCommands().get(i).print(), actual.getCommands().get(i).print());
+		}
+		return expectedResult;
+	}
+
+	@Test
+	public void sameCommands() throws IOException {
+		assertTrue(this.doEquivalenceCase(this.lines(), "\n", "LF"));
+	}
+
+	@Test
+	public void sameCommandsCRLF() throws IOException {
+		assertTrue(this.doEquivalenceCase(this.lines(), "\r\n", "CRLF"));
+	}
+
+	@Test
+	public void sameCommandsCR() throws IOException {
+		assertTrue(this.doEquivalenceCase(this.lines(), "\r", "CR"));
+	}
+
+	@Test
+	public void errorInLaterChunk() throws IOException {
+		for (String separator : new String[] { "\n", "\r\n" }) {
+			List<String> lines = this.lines();
+			int line = lines.size() * 9 / 10;
+			while (!lines.get(line).startsWith("\tcolor:")) line++;
+			lines.set(line, "\tcolor:1,256,3");
+			assertFalse(this.doEquivalenceCase(lines, separator, "Bad color near the end"));
+		}
+	}
+
+	@Test
+	public void errorBetweenBlocks() throws IOException {
+		List<String> lines = this.lines();
+		int line = lines.size() * 2 / 3;
+		while (!lines.get(line).startsWith("End ")) line++;
+		lines.add(line + 1, "Triangle");
+		assertFalse(this.doEquivalenceCase(lines, "\r\n", "Unknown shape between blocks"));
+	}
+
+	@Test
+	public void errorsInSeveralChunks() throws IOException {
+		// Only the first is reported
+		List<String> lines = this.lines();
+		for (int fraction = 3; fraction >= 1; fraction--) {
+			int line = lines.size() * fraction / 4;
+			while (!lines.get(line).startsWith("\tfilled:")) line++;
+			lines.set(line, "\tfilled:maybe");
+		}
+		assertFalse(this.doEquivalenceCase(lines, "\n", "Several errors"));
+	}
+
+	@Test
+	public void blockNotClosed() throws IOException {
+		// The chunk ends inside a block, so the next one starts where it cannot tell
+		List<String> lines = this.lines();
+		int line = lines.size() / 2;
+		while (!lines.get(line).startsWith("End ")) line++;
+		lines.remove(line);
+		assertFalse(this.doEquivalenceCase(lines, "\n", "Missing end of block"));
+	}
+
+	@Test
+	public void missingEndOfFile() throws IOException {
+		// Whatever PaintFileParser makes of it, so does this
+		List<String> lines = this.lines();
+		lines.remove(lines.size() - 1);
+		this.doEquivalenceCase(lines, "\r\n", "Missing end of file");
+	}
+
+	@Test
+	public void dataAfterEndOfFile() throws IOException {
+		List<String> lines = this.lines();
+		lines.add("Circle");
+		assertFalse(this.doEquivalenceCase(lines, "\n", "Shape after end of file"));
+	}
+}
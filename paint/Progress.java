@@ -0,0 +1,15 @@
+package ca.utoronto.utm.paint;
+
+/**
+ * Told how far a long running load or save has got, and asked whether to go on.
+ * May be called from any thread.
+ * RESPONDS-TO PaintFileParser, ParallelPaintFileParser, PaintBinaryFileParser, PaintModel
+ */
+interface Progress {
+	/**
+	 * @param done how much of the work is done, in bytes or commands
+	 * @param total how much work there is in all
+	 * @return false to cancel the work
+	 */
+	boolean update(long done, long total);
+}
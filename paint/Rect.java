@@ -0,0 +1,86 @@
+package ca.utoronto.utm.paint;
+
+/**
+ * An immutable, axis aligned rectangle in canvas coordinates. Used to describe
+ * the area a PaintCommand covers and the area of the canvas that needs to be repainted.
+ * The left and top edges are inclusive, the right and bottom edges are exclusive.
+ */
+public class Rect {
+	public static final Rect EMPTY = new Rect(0, 0, 0, 0);
+
+	/**
+	 * How far, in pixels, a stroked outline can reach past the geometry that defines it.
+	 */
+	private static final int STROKE_MARGIN = 1;
+
+	final int left, top, right, bottom; // Available to our package
+
+	Rect(int left, int top, int right, int bottom) {
+		this.left = left; this.top = top;
+		this.right = right; this.bottom = bottom;
+	}
+
+	/**
+	 * @return the rectangle covering the pixels from (minX,minY) to (maxX,maxY) inclusive,
+	 * grown so that a stroke drawn along that geometry is also covered. Edges past
+	 * the range of an int are held at its ends.
+	 */
+	static Rect around(long minX, long minY, long maxX, long maxY) {
+		return new Rect(clamp(minX - STROKE_MARGIN), clamp(minY - STROKE_MARGIN), clamp(maxX + 1 + STROKE_MARGIN), clamp(maxY + 1 + STROKE_MARGIN));
+	}
+
+	private static int clamp(long value) {
+		return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+	}
+
+	public long getWidth() { return (long) right - left; }
+	public long getHeight() { return (long) bottom - top; }
+
+	public boolean isEmpty() {
+		return right <= left || bottom <= top;
+	}
+
+	public boolean intersects(Rect other) {
+		if (this.isEmpty() || other.isEmpty()) return false;
+		return this.left < other.right && other.left < this.right
+				&& this.top < other.bottom && other.top < this.bottom;
+	}
+
+	/**
+	 * @return whether other, which is not empty, lies wholly inside this
+	 */
+	public boolean contains(Rect other) {
+		return !other.isEmpty() && other.left >= left && other.right <= right
+				&& other.top >= top && other.bottom <= bottom;
+	}
+
+	/**
+	 * @return whether the pixel at (x,y) is inside this
+	 */
+	public boolean contains(int x, int y) {
+		return x >= left && x < right && y >= top && y < bottom;
+	}
+
+	/**
+	 * @return the smallest rectangle containing both this and other. Empty rectangles are ignored.
+	 */
+	public Rect union(Rect other) {
+		if (other.isEmpty()) return this;
+		if (this.isEmpty()) return other;
+		return new Rect(Math.min(left, other.left), Math.min(top, other.top),
+				Math.max(right, other.right), Math.max(bottom, other.bottom));
+	}
+
+	/**
+	 * @return the area covered by both this and other, empty if there is none
+	 */
+	public Rect intersect(Rect other) {
+		if (!this.intersects(other)) return EMPTY;
+		return new Rect(Math.max(left, other.left), Math.max(top, other.top),
+				Math.min(right, other.right), Math.min(bottom, other.bottom));
+	}
+
+	public String toString() {
+		return "Rect[" + left + "," + top + " " + getWidth() + "x" + getHeight() + "]";
+	}
+}
@@ -1,5 +1,7 @@
 package ca.utoronto.utm.paint;
-import javafx.scene.canvas.GraphicsContext;
+import java.io.IOException;
+
+import javafx.scene.paint.Color;
 
 /**
  * IS-A PaintCommand
@@ -8,24 +10,33 @@ import javafx.scene.canvas.GraphicsContext;
  */
 public class RectangleCommand extends PaintCommand{
 	private Point p1,p2;
-	private String p = "";
+	/**
+	 * The normalized geometry, worked out whenever p1 or p2 change,
+	 * so drawing this allocates nothing. All 0 until both are set.
+	 * The width, right - left, may not fit in an int, so it is never stored.
+	 */
+	private int left, top, right, bottom;
 	
 	public RectangleCommand(Point p1, Point p2){
 		this.p1 = p1; this.p2=p2;
-		this.setChanged();
-		this.notifyObservers();
+		this.normalize();
 	}
 	
 	public RectangleCommand(){	}
 	
+	RectangleCommand(Color color, boolean fill){
+		super(color, fill);
+	}
+	
 	public Point getP1() {
 		return p1;
 	}
 
 	public void setP1(Point p1) {
+		Rect before = this.changing();
 		this.p1 = p1;
-		this.setChanged();
-		this.notifyObservers();
+		this.normalize();
+		this.changed(before);
 	}
 
 	public Point getP2() {
@@ -33,47 +44,99 @@ public class RectangleCommand extends PaintCommand{
 	}
 
 	public void setP2(Point p2) {
+		Rect before = this.changing();
 		this.p2 = p2;
-		this.setChanged();
-		this.notifyObservers();
+		this.normalize();
+		this.changed(before);
+	}
+
+	private void normalize() {
+		if (p1 == null || p2 == null) {
+			left = top = right = bottom = 0;
+		} else {
+			left = Math.min(p1.x, p2.x);
+			top = Math.min(p1.y, p2.y);
+			right = Math.max(p1.x, p2.x);
+			bottom = Math.max(p1.y, p2.y);
+		}
+		this.invalidateBounds();
 	}
 
 	public Point getTopLeft(){
-		return new Point(Math.min(p1.x, p2.x), Math.min(p1.y, p2.y));
+		return new Point(left, top);
 	}
 	public Point getBottomRight(){
-		return new Point(Math.max(p1.x, p2.x), Math.max(p1.y, p2.y));
+		return new Point(right, bottom);
+	}
+	protected Rect computeBounds() {
+		if (p1 == null || p2 == null) return Rect.EMPTY;
+		return Rect.around(left, top, right, bottom);
 	}
+	int[] getState() {
+		int[] state = this.newState(7);
+		state[2] = (p1 == null ? 0 : 1) | (p2 == null ? 0 : 2); // which points are set
+		if (p1 != null) { state[3] = p1.x; state[4] = p1.y; }
+		if (p2 != null) { state[5] = p2.x; state[6] = p2.y; }
+		return state;
+	}
+	void setState(int[] state) {
+		Rect before = this.getBounds();
+		this.restoreState(state);
+		this.p1 = (state[2] & 1) == 0 ? null : new Point(state[3], state[4]);
+		this.p2 = (state[2] & 2) == 0 ? null : new Point(state[5], state[6]);
+		this.normalize();
+		this.changed(before);
+	}
+	/**
+	 * @return the width and height, each at most Integer.MAX_VALUE
+	 */
 	public Point getDimensions(){
-		Point tl = this.getTopLeft();
-		Point br = this.getBottomRight();
-		return(new Point(br.x-tl.x, br.y-tl.y));
+		return new Point((int) Math.min(Integer.MAX_VALUE, (long) right - left), (int) Math.min(Integer.MAX_VALUE, (long) bottom - top));
 	}
 	
+	/**
+	 * Inside if filled, on an edge if not. Only called within tolerance of the bounds.
+	 */
+	protected boolean hits(int x, int y, int tolerance) {
+		if (p1 == null || p2 == null) return false;
+		if (this.isFill()) return true;
+		int t = tolerance + 1; // the stroke is about a pixel wide
+		return x <= (long) left + t || x >= (long) right - t || y <= (long) top + t || y >= (long) bottom - t;
+	}
+	PaintCommand copy() {
+		RectangleCommand copy = new RectangleCommand(this.getColor(), fill);
+		copy.p1 = p1;
+		copy.p2 = p2;
+		copy.normalize();
+		return copy;
+	}
 	@Override
-	public void execute(GraphicsContext g) {
-		Point topLeft = this.getTopLeft();
-		Point dimensions = this.getDimensions();
+	public void execute(Renderer g) {
 		if(this.isFill()){
 			g.setFill(this.getColor());
-			g.fillRect(topLeft.x, topLeft.y, dimensions.x, dimensions.y);
+			g.fillRect(left, top, (double) right - left, (double) bottom - top);
 		} else {
 			g.setStroke(this.getColor());
-			g.strokeRect(topLeft.x, topLeft.y, dimensions.x, dimensions.y);
+			g.strokeRect(left, top, (double) right - left, (double) bottom - top);
 		}
 	}
+	public void write(PaintBinaryWriter out) throws IOException {
+		out.writeShape(PaintBinaryWriter.RECTANGLE, fill, r, g, b);
+		out.writeInt(p1.x);
+		out.writeInt(p1.y);
+		out.writeInt(p2.x);
+		out.writeInt(p2.y);
+	}
 	/**
 	 * Print method which is used to write the data of the rectangle in the correct format to a file during saving.
 	 */
-	public String print(){
-		String s = "";
-		s+="Rectangle\n";
-		s+="\tcolor:"+r+","+g+","+b+"\n";
-		s+="\tfilled:"+fill+"\n";
-		s+="\tp1:("+p1.x+","+p1.y+")\n";
-		s+="\tp2:("+p2.x+","+p2.y+")\n";
-		s+="End Rectangle";
-		return s;
+	public void print(Appendable out) throws IOException {
+		out.append("Rectangle\n");
+		out.append("\tcolor:"); printInt(out, r); out.append(','); printInt(out, g); out.append(','); printInt(out, b); out.append('\n');
+		out.append("\tfilled:").append(fill ? "true" : "false").append('\n');
+		out.append("\tp1:("); printInt(out, p1.x); out.append(','); printInt(out, p1.y); out.append(")\n");
+		out.append("\tp2:("); printInt(out, p2.x); out.append(','); printInt(out, p2.y); out.append(")\n");
+		out.append("End Rectangle");
 	}
 
 }
@@ -15,14 +15,14 @@ class RectangleManipulatorStrategy extends ShapeManipulatorStrategy {
 	
 	@Override
 	public void mouseDragged(MouseEvent e) {
-		Point p2=new Point((int)e.getX(), (int)e.getY());
+		Point p2=new Point(this.getX(e), this.getY(e));
 		this.rectangleCommand.setP2(p2);
 	}
 
 	@Override
 	public void mousePressed(MouseEvent e) {
-			Point p1 = new Point((int)e.getX(), (int)e.getY());
-			Point p2 = new Point((int)e.getX(), (int)e.getY());
+			Point p1 = new Point(this.getX(e), this.getY(e));
+			Point p2 = new Point(this.getX(e), this.getY(e));
 
 			this.rectangleCommand = new RectangleCommand(p1,p2);;
 			this.addCommand(rectangleCommand);
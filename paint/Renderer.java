@@ -0,0 +1,22 @@
+package ca.utoronto.utm.paint;
+
+import javafx.scene.paint.Color;
+
+/**
+ * What a PaintCommand draws on: the few GraphicsContext operations the
+ * commands use, so they can be drawn without JavaFX as well.
+ * See FXRenderer and AWTRenderer.
+ * RESPONDS-TO PaintCommand, PaintModel
+ */
+public interface Renderer {
+	void setFill(Color color);
+	void setStroke(Color color);
+	void fillOval(double x, double y, double w, double h);
+	void strokeOval(double x, double y, double w, double h);
+	void fillRect(double x, double y, double w, double h);
+	void strokeRect(double x, double y, double w, double h);
+	/**
+	 * Stroke the polyline through the first n points of xs, ys.
+	 */
+	void strokePolyline(double[] xs, double[] ys, int n);
+}
@@ -0,0 +1,120 @@
+package ca.utoronto.utm.paint;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javafx.concurrent.Task;
+
+/**
+ * Saves a snapshot of a PaintModel on a background thread, so the user can keep
+ * drawing while it runs. Files named with View.BINARY_EXTENSION are saved in
+ * the Version 2.0 format, others in Version 1.0. The file is written next to
+ * its destination and moved over it only once complete, so a cancelled or
+ * failed save leaves any existing file as it was, and a completed one keeps
+ * its permissions. Progress is reported in commands written.
+ * RESPONDS-TO View
+ */
+public class SaveTask extends Task<Void> {
+	private static final int SAVE_BUFFER_SIZE = 1 << 16;
+
+	private File file;
+	private List<PaintCommand> commands; // see PaintModel.getSnapshot
+
+	/**
+	 * @param paintModel the model to save, as it is now
+	 * @param file the file to save to
+	 */
+	public SaveTask(PaintModel paintModel, File file) {
+		this.file = file;
+		this.commands = paintModel.getSnapshot();
+	}
+
+	/**
+	 * @return the file being saved to
+	 */
+	public File getFile() {
+		return this.file;
+	}
+
+	@Override
+	protected Void call() throws IOException {
+		Progress progress = (done, total) -> {
+			this.updateProgress(done, total);
+			return !this.isCancelled();
+		};
+		this.updateMessage("Saving " + this.file.getName());
+		Path target = this.file.getAbsoluteFile().toPath();
+		Path temp = createTemp(target);
+		boolean complete = false;
+		try {
+			if (this.file.getName().endsWith(View.BINARY_EXTENSION)) {
+				try (OutputStream out = new FileOutputStream(temp.toFile())) {
+					complete = new PaintBinaryWriter(out, true).write(this.commands, progress);
+				}
+			} else {
+				PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(temp.toFile()), SAVE_BUFFER_SIZE));
+				try {
+					complete = PaintModel.save(this.commands, writer, progress);
+				} catch (UncheckedIOException e) {
+					throw e.getCause();
+				}
+				if (writer.checkError()) throw new IOException("Could not write " + temp);
+			}
+			if (complete) {
+				try {
+					Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+		} finally {
+			Files.deleteIfExists(temp); // already gone if moved
+		}
+		return null;
+	}
+
+	/**
+	 * Create an empty file next to target, to be moved over it. It gets the
+	 * permissions of target, or, if there is no target yet, those any new file
+	 * gets, not the owner only ones of Files.createTempFile.
+	 * @param target
+	 * @return the new file
+	 * @throws IOException
+	 */
+	private static Path createTemp(Path target) throws IOException {
+		Path temp;
+		while (true) {
+			temp = target.resolveSibling(target.getFileName() + "." + Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + ".tmp");
+			try {
+				Files.createFile(temp);
+				break;
+			} catch (FileAlreadyExistsException e) {
+				// taken, try another name
+			}
+		}
+		if (Files.exists(target)) {
+			try {
+				Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+			} catch (UnsupportedOperationException e) {
+				// not a POSIX file system, nothing to keep
+			} catch (IOException e) {
+				Files.deleteIfExists(temp);
+				throw e;
+			}
+		}
+		return temp;
+	}
+}
@@ -0,0 +1,71 @@
+package ca.utoronto.utm.paint;
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.scene.input.MouseEvent;
+
+/**
+ * Picks the commands Cut and Copy work on. Pressing on a command selects it,
+ * pressing elsewhere and dragging selects those wholly inside the rubber band
+ * dragged out. With shift down, both add to the selection instead.
+ * IS-A ShapeManipulatorStrategy
+ */
+class SelectionManipulatorStrategy extends ShapeManipulatorStrategy {
+	/**
+	 * How near, in screen pixels, a press must be to a command to pick it
+	 */
+	static final int HIT_TOLERANCE = 3;
+
+	private Point start; // of the rubber band, null if none is being dragged out
+	
+	SelectionManipulatorStrategy(PaintModel paintModel) {
+		super(paintModel);
+	}
+	
+	@Override
+	public void mousePressed(MouseEvent e) {
+		int x = this.getX(e), y = this.getY(e);
+		PaintCommand hit = this.getPaintModel().hitTest(x, y, this.toDocument(HIT_TOLERANCE));
+		if (hit == null) {
+			this.start = new Point(x, y);
+			if (!e.isShiftDown()) this.select(new ArrayList<PaintCommand>(), false);
+			return;
+		}
+		List<PaintCommand> picked = new ArrayList<PaintCommand>();
+		picked.add(hit);
+		this.select(picked, e.isShiftDown());
+	}
+	
+	@Override
+	public void mouseDragged(MouseEvent e) {
+		if (this.start == null) return;
+		this.getPaintModel().setSelecting(this.band(e));
+	}
+	
+	@Override
+	public void mouseReleased(MouseEvent e) {
+		if (this.start == null) return;
+		Rect band = this.band(e);
+		this.start = null;
+		this.getPaintModel().setSelecting(Rect.EMPTY);
+		this.select(this.getPaintModel().getCommandsWithin(band), e.isShiftDown());
+	}
+	
+	/**
+	 * @return the rubber band from where the mouse was pressed to where it is now
+	 */
+	private Rect band(MouseEvent e) {
+		int x = this.getX(e), y = this.getY(e);
+		return new Rect(Math.min(this.start.x, x), Math.min(this.start.y, y),
+				Math.max(this.start.x, x) + 1, Math.max(this.start.y, y) + 1);
+	}
+	
+	/**
+	 * @param commands to select
+	 * @param add whether to add them to the selection, rather than replace it
+	 */
+	private void select(List<PaintCommand> commands, boolean add) {
+		if (add) commands.addAll(this.getPaintModel().getSelection());
+		this.getPaintModel().select(commands);
+	}
+}
@@ -18,7 +18,7 @@ public class ShapeChooserPanel extends GridPane implements EventHandler<ActionEv
 
 		this.view = view;
 
-		String[] buttonLabels = { "Circle", "Rectangle", "Squiggle" };
+		String[] buttonLabels = { "Circle", "Rectangle", "Squiggle", "Select" };
 
 		int row = 0;
 		for (String label : buttonLabels) {
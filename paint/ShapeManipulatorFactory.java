@@ -9,6 +9,8 @@ public class ShapeManipulatorFactory {
 			strategy=new SquiggleManipulatorStrategy(paintModel);
 		} else if(strategyName=="Rectangle"){
 			strategy=new RectangleManipulatorStrategy(paintModel);
+		} else if(strategyName=="Select"){
+			strategy=new SelectionManipulatorStrategy(paintModel);
 		}
 		return strategy;
 	}
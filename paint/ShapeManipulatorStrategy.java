@@ -5,13 +5,47 @@ import javafx.scene.input.MouseEvent;
 
 public class ShapeManipulatorStrategy implements  EventHandler<MouseEvent> {
 	private PaintModel paintModel;
+	private Viewport viewport = new Viewport(); // where the document is on screen
 	
 	ShapeManipulatorStrategy(PaintModel paintModel){
 		this.paintModel=paintModel;
 	}
 	
+	PaintModel getPaintModel(){
+		return this.paintModel;
+	}
+	
+	void setViewport(Viewport viewport){
+		this.viewport=viewport;
+	}
+	
+	/**
+	 * @return the document x coordinate of the mouse
+	 */
+	int getX(MouseEvent e){
+		return (int)Math.floor(this.viewport.toDocumentX(e.getX()));
+	}
+	
+	/**
+	 * @return the document y coordinate of the mouse
+	 */
+	int getY(MouseEvent e){
+		return (int)Math.floor(this.viewport.toDocumentY(e.getY()));
+	}
+	
+	/**
+	 * @return screenPixels screen pixels as document pixels, at least 1
+	 */
+	int toDocument(double screenPixels){
+		return Math.max(1, (int)Math.ceil(screenPixels/this.viewport.getScale()));
+	}
+	
+	/**
+	 * Add command to the model as the command being edited, until the mouse is released.
+	 * @param command
+	 */
 	void addCommand(PaintCommand command){
-		this.paintModel.addCommand(command);
+		this.paintModel.beginEdit(command);
 	}
 	
 	@Override
@@ -26,6 +60,7 @@ public class ShapeManipulatorStrategy implements  EventHandler<MouseEvent> {
 			this.mouseClicked(event);
 		} else if (event.getEventType() == MouseEvent.MOUSE_RELEASED) {
 			this.mouseReleased(event);
+			this.paintModel.endEdit();
 		} else if (event.getEventType() == MouseEvent.MOUSE_ENTERED) {
 			this.mouseEntered(event);
 		} else if (event.getEventType() == MouseEvent.MOUSE_EXITED) {
@@ -0,0 +1,203 @@
+package ca.utoronto.utm.paint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * A uniform grid over the canvas, bucketing PaintCommands by the cells their
+ * bounds overlap. Answers "which commands draw inside this area" by looking only
+ * at the cells under the area, so the cost of a query depends on what is
+ * near the area, not on how many commands there are.
+ *
+ * Query results are in drawing (z) order, the order in which commands were inserted.
+ * RESPONDS-TO PaintModel
+ */
+class SpatialIndex {
+	private static final int CELL_SIZE = 64;
+	/**
+	 * Commands covering more cells than this are kept in a separate list,
+	 * checked on every query, instead of being copied into every cell.
+	 */
+	private static final int MAX_CELLS = 256;
+
+	private static class Entry {
+		PaintCommand command;
+		long order; // position in z order
+		Rect bounds; // bounds when last indexed
+		int cx1, cy1, cx2, cy2; // cells covered, inclusive
+		boolean oversized;
+		int stamp; // last query that reported this, to avoid duplicates
+	}
+
+	private HashMap<Long, ArrayList<Entry>> cells = new HashMap<Long, ArrayList<Entry>>();
+	private ArrayList<Entry> oversized = new ArrayList<Entry>();
+	private IdentityHashMap<PaintCommand, Entry> entries = new IdentityHashMap<PaintCommand, Entry>();
+	private long nextOrder = 0;
+	private int queryStamp = 0;
+
+	private static long key(int cx, int cy) {
+		return ((long) cx << 32) | (cy & 0xffffffffL);
+	}
+
+	private static int cell(int coordinate) {
+		return Math.floorDiv(coordinate, CELL_SIZE);
+	}
+
+	/**
+	 * Add command on top of all commands already in this.
+	 * @param command
+	 */
+	public void insert(PaintCommand command) {
+		this.insert(command, nextOrder);
+	}
+
+	/**
+	 * Put command back where it was in the z order, as returned by remove.
+	 * @param command
+	 * @param order
+	 */
+	void insert(PaintCommand command, long order) {
+		Entry e = new Entry();
+		e.command = command;
+		e.order = order;
+		nextOrder = Math.max(nextOrder, order + 1);
+		this.entries.put(command, e);
+		this.place(e, command.getBounds());
+	}
+
+	/**
+	 * @param command
+	 * @return the place of command in the z order, -1 if it is not in this
+	 */
+	long orderOf(PaintCommand command) {
+		Entry e = this.entries.get(command);
+		return e == null ? -1 : e.order;
+	}
+
+	/**
+	 * @param command
+	 * @return the place command had in the z order, for insert, -1 if it was not in this
+	 */
+	public long remove(PaintCommand command) {
+		Entry e = this.entries.remove(command);
+		if (e == null) return -1;
+		this.unplace(e);
+		return e.order;
+	}
+
+	/**
+	 * The bounds of command have changed, move it to the cells it now covers.
+	 * Its place in the z order is unchanged.
+	 * @param command
+	 */
+	public void update(PaintCommand command) {
+		Entry e = this.entries.get(command);
+		if (e == null) return;
+		Rect bounds = command.getBounds();
+		if (!e.oversized && !bounds.isEmpty() && !e.bounds.isEmpty()
+				&& cell(bounds.left) == e.cx1 && cell(bounds.top) == e.cy1
+				&& cell(bounds.right - 1) == e.cx2 && cell(bounds.bottom - 1) == e.cy2) {
+			e.bounds = bounds; // still in the same cells
+			return;
+		}
+		this.unplace(e);
+		this.place(e, bounds);
+	}
+
+	public void clear() {
+		this.cells.clear();
+		this.oversized.clear();
+		this.entries.clear();
+		this.nextOrder = 0;
+	}
+
+	/**
+	 * Replace the contents of this with commands, in list order.
+	 * @param commands
+	 */
+	public void rebuild(List<PaintCommand> commands) {
+		this.clear();
+		for (PaintCommand c : commands) {
+			this.insert(c);
+		}
+	}
+
+	/**
+	 * @param region
+	 * @return the commands whose bounds intersect region, in z order
+	 */
+	public List<PaintCommand> query(Rect region) {
+		ArrayList<Entry> found = new ArrayList<Entry>();
+		if (region.isEmpty()) return new ArrayList<PaintCommand>();
+		int stamp = ++this.queryStamp;
+		int cx1 = cell(region.left), cy1 = cell(region.top);
+		int cx2 = cell(region.right - 1), cy2 = cell(region.bottom - 1);
+		if ((long) (cx2 - cx1 + 1) * (cy2 - cy1 + 1) > this.cells.size()) {
+			// The region covers more cells than are occupied, walk the occupied ones instead
+			for (ArrayList<Entry> bucket : this.cells.values()) {
+				this.collect(bucket, region, stamp, found);
+			}
+		} else {
+			for (int cx = cx1; cx <= cx2; cx++) {
+				for (int cy = cy1; cy <= cy2; cy++) {
+					ArrayList<Entry> bucket = this.cells.get(key(cx, cy));
+					if (bucket != null) this.collect(bucket, region, stamp, found);
+				}
+			}
+		}
+		this.collect(this.oversized, region, stamp, found);
+
+		Collections.sort(found, (a, b) -> Long.compare(a.order, b.order));
+		ArrayList<PaintCommand> result = new ArrayList<PaintCommand>(found.size());
+		for (Entry e : found) {
+			result.add(e.command);
+		}
+		return result;
+	}
+
+	private void collect(ArrayList<Entry> bucket, Rect region, int stamp, ArrayList<Entry> found) {
+		for (Entry e : bucket) {
+			if (e.stamp != stamp && e.bounds.intersects(region)) {
+				e.stamp = stamp;
+				found.add(e);
+			}
+		}
+	}
+
+	private void place(Entry e, Rect bounds) {
+		e.bounds = bounds;
+		if (bounds.isEmpty()) return; // nothing to find until it draws something
+		e.cx1 = cell(bounds.left); e.cy1 = cell(bounds.top);
+		e.cx2 = cell(bounds.right - 1); e.cy2 = cell(bounds.bottom - 1);
+		e.oversized = (long) (e.cx2 - e.cx1 + 1) * (e.cy2 - e.cy1 + 1) > MAX_CELLS;
+		if (e.oversized) {
+			this.oversized.add(e);
+			return;
+		}
+		for (int cx = e.cx1; cx <= e.cx2; cx++) {
+			for (int cy = e.cy1; cy <= e.cy2; cy++) {
+				this.cells.computeIfAbsent(key(cx, cy), k -> new ArrayList<Entry>()).add(e);
+			}
+		}
+	}
+
+	private void unplace(Entry e) {
+		if (e.bounds.isEmpty()) return;
+		if (e.oversized) {
+			this.oversized.remove(e);
+			return;
+		}
+		for (int cx = e.cx1; cx <= e.cx2; cx++) {
+			for (int cy = e.cy1; cy <= e.cy2; cy++) {
+				Long k = key(cx, cy);
+				ArrayList<Entry> bucket = this.cells.get(k);
+				if (bucket == null) continue;
+				bucket.remove(e);
+				if (bucket.isEmpty()) this.cells.remove(k);
+			}
+		}
+	}
+}
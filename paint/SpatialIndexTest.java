@@ -0,0 +1,95 @@
+package ca.utoronto.utm.paint;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * RESPONDS-TO SpatialIndex
+ *
+ */
+public class SpatialIndexTest {
+
+	private RectangleCommand rectangle(int x1, int y1, int x2, int y2) {
+		return new RectangleCommand(new Point(x1, y1), new Point(x2, y2));
+	}
+
+	@Test
+	public void queryInZOrder() {
+		SpatialIndex index = new SpatialIndex();
+		RectangleCommand a = this.rectangle(0, 0, 10, 10), b = this.rectangle(5, 5, 200, 200), c = this.rectangle(100, 100, 110, 110);
+		index.insert(a);
+		index.insert(b);
+		index.insert(c);
+		assertEquals("Near the origin", Arrays.asList(a, b), index.query(new Rect(0, 0, 8, 8)));
+		assertEquals("Over all three, once each", Arrays.asList(a, b, c), index.query(new Rect(-1000, -1000, 1000, 1000)));
+		assertEquals("Nowhere near", Collections.emptyList(), index.query(new Rect(500, 500, 600, 600)));
+		assertEquals("Empty region", Collections.emptyList(), index.query(Rect.EMPTY));
+	}
+
+	@Test
+	public void negativeCoordinates() {
+		SpatialIndex index = new SpatialIndex();
+		RectangleCommand left = this.rectangle(-300, -300, -200, -200), across = this.rectangle(-10, -10, 10, 10);
+		index.insert(left);
+		index.insert(across);
+		// Cells either side of 0 and -64, where rounding towards zero would go wrong
+		assertEquals("Left of and above the origin", Arrays.asList(left), index.query(new Rect(-250, -250, -240, -240)));
+		assertEquals("Just left of the origin", Arrays.asList(across), index.query(new Rect(-5, 2, -4, 3)));
+		assertEquals("Just past a cell edge", Collections.emptyList(), index.query(new Rect(-70, -70, -65, -65)));
+		assertEquals("Both", Arrays.asList(left, across), index.query(new Rect(-400, -400, 0, 0)));
+	}
+
+	@Test
+	public void oversized() {
+		SpatialIndex index = new SpatialIndex();
+		// Covers far more than 256 cells of 64 pixels, so it is kept in a list of its own
+		RectangleCommand huge = this.rectangle(-100000, -100000, 100000, 100000);
+		RectangleCommand small = this.rectangle(0, 0, 5, 5);
+		index.insert(small);
+		index.insert(huge);
+		assertEquals("Found with those in cells, in z order", Arrays.asList(small, huge), index.query(new Rect(0, 0, 3, 3)));
+		assertEquals("Found far from the others", Arrays.asList(huge), index.query(new Rect(-90000, 90000, -89990, 90010)));
+		assertEquals("Not found outside it", Collections.emptyList(), index.query(new Rect(200000, 0, 200010, 10)));
+		RectangleCommand widest = this.rectangle(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+		index.insert(widest);
+		assertEquals("At the ends of the int range", Arrays.asList(widest), index.query(new Rect(Integer.MAX_VALUE - 5, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE + 5)));
+	}
+
+	@Test
+	public void removeAndRestore() {
+		SpatialIndex index = new SpatialIndex();
+		RectangleCommand a = this.rectangle(0, 0, 10, 10), huge = this.rectangle(-50000, -50000, 50000, 50000), c = this.rectangle(5, 5, 15, 15);
+		index.insert(a);
+		index.insert(huge);
+		index.insert(c);
+		Rect region = new Rect(6, 6, 8, 8);
+		long order = index.remove(a);
+		assertEquals("Removed from its cells", Arrays.asList(huge, c), index.query(region));
+		long hugeOrder = index.remove(huge);
+		assertEquals("Removed from the oversized list", Arrays.asList(c), index.query(region));
+		assertEquals("Not there to remove", -1, index.remove(huge));
+		index.insert(huge, hugeOrder);
+		index.insert(a, order);
+		assertEquals("Back in their places in the z order", Arrays.asList(a, huge, c), index.query(region));
+		assertEquals("Order kept", order, index.orderOf(a));
+	}
+
+	@Test
+	public void update() {
+		SpatialIndex index = new SpatialIndex();
+		RectangleCommand a = this.rectangle(0, 0, 10, 10), b = this.rectangle(0, 0, 10, 10);
+		index.insert(a);
+		index.insert(b);
+		a.setP2(new Point(1000, 1000));
+		index.update(a);
+		assertEquals("Found where it now is", Arrays.asList(a), index.query(new Rect(900, 900, 901, 901)));
+		assertEquals("Still below b", Arrays.asList(a, b), index.query(new Rect(0, 0, 5, 5)));
+		a.setP2(new Point(-300000, -300000)); // now oversized
+		index.update(a);
+		assertEquals("Oversized once updated", Arrays.asList(a), index.query(new Rect(-200000, -200000, -199999, -199999)));
+		assertEquals("No longer where it was", Collections.emptyList(), index.query(new Rect(900, 900, 901, 901)));
+	}
+}
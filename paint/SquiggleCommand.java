@@ -1,6 +1,9 @@
 package ca.utoronto.utm.paint;
-import javafx.scene.canvas.GraphicsContext;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+
+import javafx.scene.paint.Color;
 
 /**
  * IS-A PaintCommand
@@ -8,42 +11,194 @@ import java.util.ArrayList;
  *
  */
 public class SquiggleCommand extends PaintCommand {
-	private ArrayList<Point> points=new ArrayList<Point>();
+	/**
+	 * The points, packed as x0,y0,x1,y1,... so that a point costs two ints
+	 * instead of a Point object. Only the first 2*size entries are used.
+	 */
+	private int[] coords = new int[16];
+	private int size; // number of points
+	private int minX, minY, maxX, maxY; // extent of points, valid once size>0
+	/**
+	 * The points as JavaFX wants them for strokePolyline. Built on the first
+	 * execute and extended by later ones with the points added since.
+	 */
+	private double[] xs, ys;
+	private int rendered; // number of points copied into xs and ys
 	
 	public SquiggleCommand() {
 	}
+	SquiggleCommand(Color color, boolean fill) {
+		super(color, fill);
+	}
 	public void add(Point p){
-		this.points.add(p); 
-		this.setChanged();
-		this.notifyObservers();
+		this.add(p.x, p.y);
+	}
+	public void add(int x, int y){
+		Rect before = this.changing();
+		int lastX = x, lastY = y;
+		if (this.size == 0) {
+			minX = maxX = x; minY = maxY = y;
+		} else {
+			lastX = this.getX(this.size-1); lastY = this.getY(this.size-1);
+			minX = Math.min(minX, x); maxX = Math.max(maxX, x);
+			minY = Math.min(minY, y); maxY = Math.max(maxY, y);
+		}
+		if (2*this.size == this.coords.length) {
+			int capacity = Math.max(8, this.size + (this.size >> 1)); // in points
+			this.coords = Arrays.copyOf(this.coords, 2*capacity);
+		}
+		this.coords[2*this.size] = x;
+		this.coords[2*this.size+1] = y;
+		this.size++;
+		this.invalidateBounds();
+		// Only the new segment needs to be drawn
+		if (before != null) this.changed(before, Rect.around(Math.min(lastX, x), Math.min(lastY, y), Math.max(lastX, x), Math.max(lastY, y)));
+	}
+	/**
+	 * Release the unused space at the end of the point store, once no more points will be added.
+	 */
+	void trimToSize(){
+		this.coords = Arrays.copyOf(this.coords, 2*this.size);
+	}
+	/**
+	 * Drop the points that make no visible difference, see StrokeSimplifier.
+	 * Only for a squiggle being edited, as undo expects points to be only ever added.
+	 * @param tolerance in pixels
+	 */
+	void simplify(double tolerance){
+		Rect before = this.changing();
+		this.size = StrokeSimplifier.simplify(this.coords, this.size, tolerance);
+		this.rendered = 0;
+		this.computeExtent();
+		this.invalidateBounds();
+		this.changed(before);
+	}
+	/**
+	 * @param tolerance in pixels
+	 * @return a new squiggle, the same color and fill as this, with the points
+	 * of this that make a visible difference, see StrokeSimplifier
+	 */
+	SquiggleCommand simplified(double tolerance){
+		SquiggleCommand result = new SquiggleCommand();
+		result.restoreState(this.newState(2));
+		result.coords = Arrays.copyOf(this.coords, 2*this.size);
+		result.size = StrokeSimplifier.simplify(result.coords, this.size, tolerance);
+		result.trimToSize();
+		result.computeExtent();
+		return result;
+	}
+	/**
+	 * Near the polyline, whether filled or not, as it is only ever stroked
+	 */
+	protected boolean hits(int x, int y, int tolerance) {
+		double limit = (tolerance + 1.0) * (tolerance + 1.0); // the stroke is about a pixel wide
+		if (this.size == 1) return StrokeSimplifier.distanceSquared(x, y, this.getX(0), this.getY(0), this.getX(0), this.getY(0)) <= limit;
+		for (int i = 1; i < this.size; i++) {
+			if (StrokeSimplifier.distanceSquared(x, y, this.getX(i-1), this.getY(i-1), this.getX(i), this.getY(i)) <= limit) return true;
+		}
+		return false;
+	}
+	PaintCommand copy() {
+		SquiggleCommand copy = new SquiggleCommand(this.getColor(), fill);
+		copy.coords = Arrays.copyOf(this.coords, 2*this.size);
+		copy.size = this.size;
+		copy.computeExtent();
+		return copy;
+	}
+	private void computeExtent(){
+		if (this.size == 0) return;
+		minX = maxX = this.getX(0); minY = maxY = this.getY(0);
+		for (int i = 1; i < this.size; i++) {
+			minX = Math.min(minX, this.getX(i)); maxX = Math.max(maxX, this.getX(i));
+			minY = Math.min(minY, this.getY(i)); maxY = Math.max(maxY, this.getY(i));
+		}
+	}
+	/**
+	 * Points are only ever added, so the state is just how many there are,
+	 * with their extent. Undoing an add only shortens size, and the point is still
+	 * in coords when it is redone.
+	 */
+	int[] getState() {
+		int[] state = this.newState(7);
+		state[2] = size;
+		state[3] = minX; state[4] = minY; state[5] = maxX; state[6] = maxY;
+		return state;
+	}
+	void setState(int[] state) {
+		Rect before = this.getBounds();
+		this.restoreState(state);
+		this.size = Math.min(state[2], this.coords.length/2);
+		this.rendered = Math.min(this.rendered, this.size);
+		minX = state[3]; minY = state[4]; maxX = state[5]; maxY = state[6];
+		this.invalidateBounds();
+		this.changed(before);
+	}
+	protected Rect computeBounds() {
+		if (this.size == 0) return Rect.EMPTY;
+		return Rect.around(minX, minY, maxX, maxY);
+	}
+	/**
+	 * Below walk the points by index, without allocating
+	 */
+	public int size(){ return this.size; }
+	public int getX(int i){ return this.coords[2*i]; }
+	public int getY(int i){ return this.coords[2*i+1]; }
+	/**
+	 * @return a copy of the points of this, use size, getX and getY to avoid building it
+	 */
+	public ArrayList<Point> getPoints(){
+		ArrayList<Point> points = new ArrayList<Point>(this.size);
+		for (int i = 0; i < this.size; i++) {
+			points.add(new Point(this.getX(i), this.getY(i)));
+		}
+		return points;
 	}
-	public ArrayList<Point> getPoints(){ return this.points; }
 	
+	/**
+	 * Draw this as a single polyline, one render operation however many points there are.
+	 */
 	@Override
-	public void execute(GraphicsContext g) {
-		ArrayList<Point> points = this.getPoints();
+	public void execute(Renderer g) {
+		if(this.size<2)return;
+		if(this.xs==null || this.xs.length<this.size){
+			int capacity = this.coords.length/2;
+			this.xs = this.xs==null ? new double[capacity] : Arrays.copyOf(this.xs, capacity);
+			this.ys = this.ys==null ? new double[capacity] : Arrays.copyOf(this.ys, capacity);
+		}
+		for(;this.rendered<this.size;this.rendered++){
+			this.xs[this.rendered] = this.getX(this.rendered);
+			this.ys[this.rendered] = this.getY(this.rendered);
+		}
 		g.setStroke(this.getColor());
-		for(int i=0;i<points.size()-1;i++){
-			Point p1 = points.get(i);
-			Point p2 = points.get(i+1);
-			g.strokeLine(p1.x, p1.y, p2.x, p2.y);
+		g.strokePolyline(this.xs, this.ys, this.size);
+	}
+	/**
+	 * Points are written relative to the one before, which for a freehand
+	 * stroke is usually only a pixel or two away. The difference may wrap
+	 * around, the reader adds it back the same way.
+	 */
+	public void write(PaintBinaryWriter out) throws IOException {
+		out.writeShape(PaintBinaryWriter.SQUIGGLE, fill, r, g, b);
+		out.writeUnsigned(this.size);
+		int x = 0, y = 0;
+		for (int i = 0; i < this.size; i++) {
+			out.writeInt(this.getX(i) - x);
+			out.writeInt(this.getY(i) - y);
+			x = this.getX(i); y = this.getY(i);
 		}
-		
 	}
 	/**
 	 * Print method which is used to write the data of the squiggle in the correct format to a file during saving.
 	 */
-	public String print(){
-		String s = "";
-		s+="Squiggle\n";
-		s+="\tcolor:"+r+","+g+","+b+"\n";
-		s+="\tfilled:"+fill+"\n";
-		s+="\tpoints\n";
-		for (Point p: points) {
-			s+="\t\t point:("+p.x+","+p.y+")\n";
-		}
-		s+="\tend points\n";
-		s+="End Squiggle";
-		return s;
+	public void print(Appendable out) throws IOException {
+		out.append("Squiggle\n");
+		out.append("\tcolor:"); printInt(out, r); out.append(','); printInt(out, g); out.append(','); printInt(out, b); out.append('\n');
+		out.append("\tfilled:").append(fill ? "true" : "false").append('\n');
+		out.append("\tpoints\n");
+		for (int i = 0; i < this.size; i++) {
+			out.append("\t\t point:("); printInt(out, this.getX(i)); out.append(','); printInt(out, this.getY(i)); out.append(")\n");
+		}
+		out.append("\tend points\n");
+		out.append("End Squiggle");
 	}
 }
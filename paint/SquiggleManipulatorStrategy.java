@@ -12,9 +12,30 @@ class SquiggleManipulatorStrategy extends ShapeManipulatorStrategy {
 	}
 
 	private SquiggleCommand squiggleCommand;
+	private double tolerance = StrokeSimplifier.DEFAULT_TOLERANCE;
+	
+	/**
+	 * @param tolerance how far, in pixels, the finished squiggle may stray from
+	 * the points dragged through, see StrokeSimplifier. Negative to keep every point.
+	 */
+	void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+	
 	@Override
 	public void mouseDragged(MouseEvent e) {
-		this.squiggleCommand.add(new Point((int)e.getX(), (int)e.getY()));
+		int x = this.getX(e), y = this.getY(e);
+		int n = this.squiggleCommand.size();
+		if (n > 0 && this.squiggleCommand.getX(n-1) == x && this.squiggleCommand.getY(n-1) == y) return; // no movement
+		this.squiggleCommand.add(x, y);
+	}
+	
+	@Override
+	public void mouseReleased(MouseEvent e) {
+		// Only while it is still the edited squiggle, simplify changes it in place
+		if (this.tolerance >= 0 && this.getPaintModel().getEditing() == this.squiggleCommand) {
+			this.squiggleCommand.simplify(this.tolerance);
+		}
 	}
 
 	@Override
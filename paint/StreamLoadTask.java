@@ -0,0 +1,105 @@
+package ca.utoronto.utm.paint;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javafx.animation.AnimationTimer;
+import javafx.concurrent.Task;
+
+/**
+ * Opens a Version 1.0 Paint Save File progressively: the parser, on a
+ * background thread, puts batches of commands in a bounded queue as it
+ * completes them, and each JavaFX pulse moves those waiting into the model,
+ * which can be on screen from the start. The first shapes of a huge file
+ * show as soon as they are parsed, instead of after the whole file is.
+ *
+ * The queue holds at most QUEUE_BATCHES batches, so if the screen falls
+ * behind, the parser waits for it. Progress is reported in bytes parsed,
+ * cancelling the task stops the parse. The value of the task is the model.
+ * Construct and start it on the JavaFX application thread.
+ * RESPONDS-TO View
+ */
+public class StreamLoadTask extends Task<PaintModel> {
+	static final int QUEUE_BATCHES = 8;
+	/**
+	 * Files this big are parsed lazily, see PaintFileParser.setLazy, so their
+	 * squiggles take memory only while they are drawn
+	 */
+	static final long LAZY_SIZE = 64L << 20;
+
+	private File file;
+	private PaintModel paintModel = new PaintModel();
+	private BlockingQueue<List<PaintCommand>> queue = new ArrayBlockingQueue<List<PaintCommand>>(QUEUE_BATCHES);
+	private AnimationTimer drain = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			StreamLoadTask.this.drain();
+		}
+	};
+
+	/**
+	 * @param file the file to open
+	 */
+	public StreamLoadTask(File file) {
+		this.file = file;
+		this.drain.start();
+	}
+
+	/**
+	 * @return the file being opened
+	 */
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * @return the model the commands of the file are put in as they are parsed, empty to start with
+	 */
+	public PaintModel getPaintModel() {
+		return this.paintModel;
+	}
+
+	/**
+	 * Move the batches waiting in the queue into the model, on the JavaFX
+	 * application thread. Stops the pulse once the parse is over and the queue empty.
+	 */
+	private void drain() {
+		boolean over = this.isDone(); // checked first, so nothing queued after it is missed
+		List<PaintCommand> batch;
+		while ((batch = this.queue.poll()) != null) {
+			this.paintModel.appendAll(batch);
+		}
+		if (over) this.drain.stop();
+	}
+
+	/**
+	 * @return the model holding the commands of the file, some of them
+	 * possibly still queued, or null if cancelled
+	 * @throws IOException with the parser's error message if the file could not be parsed
+	 */
+	@Override
+	protected PaintModel call() throws IOException {
+		PaintFileParser parser = new PaintFileParser();
+		parser.setLazy(this.file.length() >= LAZY_SIZE);
+		parser.setProgress((done, total) -> {
+			this.updateProgress(done, total);
+			return !this.isCancelled();
+		});
+		parser.setSink(commands -> {
+			try {
+				this.queue.put(commands);
+				return !this.isCancelled();
+			} catch (InterruptedException e) {
+				return false; // cancelled while waiting for the screen
+			}
+		});
+		this.updateMessage("Opening " + this.file.getName());
+		boolean parsed = parser.parse(this.file, this.paintModel);
+		if (this.isCancelled()) return null;
+		if (!parsed) throw new IOException(parser.getErrorMessage());
+		return this.paintModel;
+	}
+}
@@ -0,0 +1,120 @@
+package ca.utoronto.utm.paint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Simplifies freehand strokes with the Ramer-Douglas-Peucker algorithm: of a
+ * run of points, only those further than a tolerance from the line between the
+ * ends of the run are kept, recursively. Repeated points, and points on (or within
+ * tolerance of) a straight stretch, are dropped, and the stroke looks the same.
+ * RESPONDS-TO SquiggleManipulatorStrategy, SquiggleCommand
+ */
+public final class StrokeSimplifier {
+	/**
+	 * In pixels. Half a pixel is below what can be seen.
+	 */
+	public static final double DEFAULT_TOLERANCE = 0.5;
+
+	private StrokeSimplifier() {
+	}
+
+	/**
+	 * Simplify, in place, the points packed x0,y0,x1,y1,... in coords. The
+	 * first and last points are always kept, as is the order of the others.
+	 * @param coords
+	 * @param size the number of points in coords
+	 * @param tolerance how far, in pixels, a dropped point may be from the simplified stroke
+	 * @return the number of points left, at the start of coords
+	 */
+	static int simplify(int[] coords, int size, double tolerance) {
+		// Exact repeats first, they add nothing however small tolerance is
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			int x = coords[2 * i], y = coords[2 * i + 1];
+			if (n > 0 && coords[2 * n - 2] == x && coords[2 * n - 1] == y) continue;
+			coords[2 * n] = x;
+			coords[2 * n + 1] = y;
+			n++;
+		}
+		if (n < 3) return n;
+
+		boolean[] keep = new boolean[n];
+		keep[0] = keep[n - 1] = true;
+		double limit = tolerance * tolerance;
+		int[] stack = new int[64]; // pairs of first, last still to be looked at
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = n - 1;
+		while (top > 0) {
+			int last = stack[--top], first = stack[--top];
+			int furthest = -1;
+			double max = limit;
+			for (int i = first + 1; i < last; i++) {
+				double d = distanceSquared(coords, i, first, last);
+				if (d > max) {
+					max = d;
+					furthest = i;
+				}
+			}
+			if (furthest < 0) continue;
+			keep[furthest] = true;
+			if (top + 4 > stack.length) stack = Arrays.copyOf(stack, 2 * stack.length);
+			stack[top++] = first;
+			stack[top++] = furthest;
+			stack[top++] = furthest;
+			stack[top++] = last;
+		}
+
+		int m = 0;
+		for (int i = 0; i < n; i++) {
+			if (!keep[i]) continue;
+			coords[2 * m] = coords[2 * i];
+			coords[2 * m + 1] = coords[2 * i + 1];
+			m++;
+		}
+		return m;
+	}
+
+	/**
+	 * @return the square of the distance from point i to the segment from point a to point b
+	 */
+	private static double distanceSquared(int[] coords, int i, int a, int b) {
+		return distanceSquared(coords[2 * i], coords[2 * i + 1], coords[2 * a], coords[2 * a + 1], coords[2 * b], coords[2 * b + 1]);
+	}
+
+	/**
+	 * @return the square of the distance from (px,py) to the segment from (ax,ay) to (bx,by)
+	 */
+	static double distanceSquared(double px, double py, double ax, double ay, double bx, double by) {
+		double dx = bx - ax, dy = by - ay;
+		double length = dx * dx + dy * dy;
+		double t = length == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / length;
+		t = Math.max(0, Math.min(1, t));
+		double ex = ax + t * dx - px, ey = ay + t * dy - py;
+		return ex * ex + ey * ey;
+	}
+
+	/**
+	 * Replace every squiggle of paintModel by a simplified one, for example
+	 * after loading a file recorded without simplification. This can be undone.
+	 * @param paintModel
+	 * @param tolerance see simplify
+	 * @return the number of points dropped
+	 */
+	public static int simplify(PaintModel paintModel, double tolerance) {
+		ArrayList<PaintCommand> commands = new ArrayList<PaintCommand>(paintModel.getCommands().size());
+		int dropped = 0;
+		for (PaintCommand c : paintModel.getCommands()) {
+			if (c instanceof SquiggleCommand) {
+				SquiggleCommand squiggle = (SquiggleCommand) c;
+				SquiggleCommand simplified = squiggle.simplified(tolerance);
+				dropped += squiggle.size() - simplified.size();
+				c = simplified;
+			}
+			commands.add(c);
+		}
+		if (dropped > 0) paintModel.replaceCommands(commands);
+		return dropped;
+	}
+}
@@ -0,0 +1,168 @@
+package ca.utoronto.utm.paint;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+/**
+ * The committed commands of a PaintModel, rendered at the current zoom into
+ * TILE_SIZE square images. Painting the screen blits the tiles it covers,
+ * and only renders those not cached, so panning over a large drawing, or
+ * repainting after a small change, replays few commands.
+ *
+ * A tile is dropped when a change touches it, when the zoom changes, or when
+ * it is the least recently used and the cache is full.
+ * RESPONDS-TO PaintPanel
+ */
+class TileCache {
+	static final int TILE_SIZE = 256; // in screen pixels
+	/**
+	 * A tile takes TILE_SIZE*TILE_SIZE*4 bytes, 256K, so this is 32M
+	 */
+	static final int DEFAULT_MAX_TILES = 128;
+	/**
+	 * Screens of tiles fit makes room for, so panning back and forth finds them cached
+	 */
+	static final int SCREENS = 2;
+
+	private LinkedHashMap<Long, WritableImage> tiles; // in access order, least recent first
+	private int minTiles; // the cache holds at least this many, whatever the screen
+	private int maxTiles; // see fit
+	private double scale = Double.NaN; // the zoom the tiles were rendered at
+	private Canvas scratch = new Canvas(TILE_SIZE, TILE_SIZE); // tiles are rendered here
+	private SnapshotParameters parameters = new SnapshotParameters();
+
+	TileCache() {
+		this(DEFAULT_MAX_TILES);
+	}
+
+	/**
+	 * @param maxTiles how many tiles to keep at most, until fit makes room for more
+	 */
+	TileCache(int maxTiles) {
+		this.minTiles = maxTiles;
+		this.maxTiles = maxTiles;
+		this.tiles = new LinkedHashMap<Long, WritableImage>(2 * maxTiles, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, WritableImage> eldest) {
+				return this.size() > TileCache.this.maxTiles;
+			}
+		};
+		this.parameters.setFill(Color.TRANSPARENT);
+	}
+
+	private static long key(int tx, int ty) {
+		return ((long) tx << 32) | (ty & 0xffffffffL);
+	}
+
+	/**
+	 * Make room for SCREENS screens width by height of tiles, as a screen
+	 * that is not tile aligned covers one more column and row of them.
+	 * @param width of the screen, in pixels
+	 * @param height
+	 */
+	void fit(double width, double height) {
+		long visible = (long) (Math.ceil(width / TILE_SIZE) + 1) * (long) (Math.ceil(height / TILE_SIZE) + 1);
+		this.maxTiles = (int) Math.min(Integer.MAX_VALUE / 2, Math.max(this.minTiles, SCREENS * visible));
+		for (Iterator<Long> i = this.tiles.keySet().iterator(); this.tiles.size() > this.maxTiles;) {
+			i.next();
+			i.remove(); // least recent first
+		}
+	}
+
+	/**
+	 * Forget every tile.
+	 */
+	void clear() {
+		this.tiles.clear();
+	}
+
+	/**
+	 * Forget the tiles that dirty touches.
+	 * @param dirty in document coordinates
+	 */
+	void invalidate(Rect dirty) {
+		if (dirty.isEmpty() || this.tiles.isEmpty()) return;
+		int tx1 = this.tile(dirty.left), ty1 = this.tile(dirty.top);
+		int tx2 = this.tile(dirty.right), ty2 = this.tile(dirty.bottom);
+		if ((long) (tx2 - tx1 + 1) * (ty2 - ty1 + 1) > this.tiles.size()) {
+			// Fewer tiles cached than under dirty, look at those instead
+			for (Iterator<Long> i = this.tiles.keySet().iterator(); i.hasNext();) {
+				long k = i.next();
+				int tx = (int) (k >> 32), ty = (int) k;
+				if (tx >= tx1 && tx <= tx2 && ty >= ty1 && ty <= ty2) i.remove();
+			}
+			return;
+		}
+		for (int tx = tx1; tx <= tx2; tx++) {
+			for (int ty = ty1; ty <= ty2; ty++) {
+				this.tiles.remove(key(tx, ty));
+			}
+		}
+	}
+
+	/**
+	 * @return the tile column, or row, holding the document coordinate at the current scale
+	 */
+	private int tile(int coordinate) {
+		return (int) Math.floor(coordinate * this.scale / TILE_SIZE);
+	}
+
+	/**
+	 * Draw, on g, the tiles of model on a screen width by height showing viewport,
+	 * rendering those that are not cached.
+	 * @param g draws on the screen, in screen coordinates
+	 * @param model
+	 * @param viewport
+	 * @param width
+	 * @param height
+	 * @param dirty only the tiles touching this area, in document coordinates, are drawn. null for all
+	 */
+	void paint(GraphicsContext g, PaintModel model, Viewport viewport, double width, double height, Rect dirty) {
+		if (viewport.getScale() != this.scale) {
+			this.clear();
+			this.scale = viewport.getScale();
+		}
+		double originX = viewport.getX() * this.scale, originY = viewport.getY() * this.scale; // screen position of tile 0,0 negated
+		int tx1 = (int) Math.floor(originX / TILE_SIZE), ty1 = (int) Math.floor(originY / TILE_SIZE);
+		int tx2 = (int) Math.floor((originX + width) / TILE_SIZE), ty2 = (int) Math.floor((originY + height) / TILE_SIZE);
+		if (dirty != null) {
+			if (dirty.isEmpty()) return;
+			tx1 = Math.max(tx1, this.tile(dirty.left)); ty1 = Math.max(ty1, this.tile(dirty.top));
+			tx2 = Math.min(tx2, this.tile(dirty.right)); ty2 = Math.min(ty2, this.tile(dirty.bottom));
+		}
+		for (int tx = tx1; tx <= tx2; tx++) {
+			for (int ty = ty1; ty <= ty2; ty++) {
+				long k = key(tx, ty);
+				WritableImage image = this.tiles.get(k);
+				if (image == null) {
+					image = this.render(model, tx, ty);
+					this.tiles.put(k, image);
+				}
+				double x = Math.round(tx * TILE_SIZE - originX), y = Math.round(ty * TILE_SIZE - originY);
+				if (dirty != null) g.clearRect(x, y, TILE_SIZE, TILE_SIZE);
+				g.drawImage(image, x, y);
+			}
+		}
+	}
+
+	/**
+	 * @return a new image of the commands of model under tile tx,ty
+	 */
+	private WritableImage render(PaintModel model, int tx, int ty) {
+		GraphicsContext g = this.scratch.getGraphicsContext2D();
+		g.setTransform(1, 0, 0, 1, 0, 0);
+		g.clearRect(0, 0, TILE_SIZE, TILE_SIZE);
+		g.setTransform(this.scale, 0, 0, this.scale, -tx * TILE_SIZE, -ty * TILE_SIZE);
+		Rect area = new Rect((int) Math.floor(tx * TILE_SIZE / this.scale), (int) Math.floor(ty * TILE_SIZE / this.scale),
+				(int) Math.ceil((tx + 1) * TILE_SIZE / this.scale), (int) Math.ceil((ty + 1) * TILE_SIZE / this.scale));
+		model.execute(g, area);
+		return this.scratch.snapshot(this.parameters, new WritableImage(TILE_SIZE, TILE_SIZE));
+	}
+}
@@ -1,31 +1,55 @@
 package ca.utoronto.utm.paint;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.SeparatorMenuItem;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
 public class View implements EventHandler<ActionEvent> {
+	/**
+	 * Files saved with this extension use the Version 2.0 (binary) format.
+	 * Open recognizes either format from the file contents.
+	 */
+	public static final String BINARY_EXTENSION = ".pbin";
 
 	private PaintModel paintModel;
 	private PaintPanel paintPanel;
 	private ShapeChooserPanel shapeChooserPanel;
 	private Stage stage;
-	private BufferedReader bufferedReader;
-	private PrintWriter writer;
+
+	/**
+	 * Opens and saves run one at a time on this, off the JavaFX application thread
+	 */
+	private ExecutorService io = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "Paint IO");
+		t.setDaemon(true);
+		return t;
+	});
+	private HBox statusBar; // shown while an open or save runs
+	private Label statusLabel;
+	private ProgressBar statusProgress;
+	private Task<?> running; // the open or save shown in the status bar, null if none
+	private List<PaintCommand> clipboard = new ArrayList<PaintCommand>(); // copies of what was last cut or copied
 
 	public View(PaintModel model, Stage stage) {
 		this.stage = stage;
@@ -50,6 +74,7 @@ public class View implements EventHandler<ActionEvent> {
 		root.setTop(createMenuBar());
 		root.setCenter(this.paintPanel);
 		root.setLeft(this.shapeChooserPanel);
+		root.setBottom(createStatusBar());
 
 		Scene scene = new Scene(root);
 		stage.setScene(scene);
@@ -65,6 +90,53 @@ public class View implements EventHandler<ActionEvent> {
 		return shapeChooserPanel;
 	}
 
+	private HBox createStatusBar() {
+		this.statusLabel = new Label();
+		this.statusProgress = new ProgressBar();
+		Button cancel = new Button("Cancel");
+		cancel.setOnAction(e -> {
+			if (this.running != null) this.running.cancel();
+		});
+		this.statusBar = new HBox(5, this.statusLabel, this.statusProgress, cancel);
+		this.statusBar.setVisible(false);
+		this.statusBar.setManaged(false);
+		return this.statusBar;
+	}
+
+	/**
+	 * Run task on the io thread, showing its progress in the status bar until it is done.
+	 * @param task
+	 * @param message what the status bar says while task runs
+	 */
+	private void run(Task<?> task, String message) {
+		this.running = task;
+		this.statusLabel.setText(message);
+		this.statusProgress.progressProperty().bind(task.progressProperty());
+		this.statusBar.setVisible(true);
+		this.statusBar.setManaged(true);
+		this.io.execute(task);
+	}
+
+	/**
+	 * task is done, hide the status bar unless another task has taken it over
+	 * @param task
+	 */
+	private void finished(Task<?> task) {
+		if (this.running != task) return;
+		this.running = null;
+		this.statusProgress.progressProperty().unbind();
+		this.statusBar.setVisible(false);
+		this.statusBar.setManaged(false);
+	}
+
+	private void showError(String message) {
+		Alert alert = new Alert(AlertType.ERROR);
+		alert.setTitle("Error!");
+		alert.setHeaderText("An error has occured.");
+		alert.setContentText(message);
+		alert.showAndWait();
+	}
+
 	private MenuBar createMenuBar() {
 
 		MenuBar menuBar = new MenuBar();
@@ -123,6 +195,24 @@ public class View implements EventHandler<ActionEvent> {
 
 		menuBar.getMenus().add(menu);
 
+		// A menu for the view of the document
+
+		menu = new Menu("View");
+
+		menuItem = new MenuItem("Zoom In");
+		menuItem.setOnAction(this);
+		menu.getItems().add(menuItem);
+
+		menuItem = new MenuItem("Zoom Out");
+		menuItem.setOnAction(this);
+		menu.getItems().add(menuItem);
+
+		menuItem = new MenuItem("Actual Size");
+		menuItem.setOnAction(this);
+		menu.getItems().add(menuItem);
+
+		menuBar.getMenus().add(menu);
+
 		return menuBar;
 	}
 
@@ -140,25 +230,35 @@ public class View implements EventHandler<ActionEvent> {
 
 			if (file != null) {
 				System.out.println("Opening: " + file.getName() + "." + "\n");
-				try {
-					bufferedReader = new BufferedReader(new FileReader(file));
-				} catch (FileNotFoundException e) {
-					e.printStackTrace();
+				if (PaintBinaryFileParser.isBinary(file)) {
+					LoadTask task = new LoadTask(file);
+					task.setOnSucceeded(e -> {
+						this.finished(task);
+						this.setPaintModel(task.getValue());
+					});
+					task.setOnFailed(e -> {
+						this.finished(task);
+						this.showError(task.getException().getMessage());
+					});
+					task.setOnCancelled(e -> this.finished(task));
+					this.run(task, "Opening " + file.getName());
+				} else {
+					// Shown while it loads, the drawing on screen comes back if the open does not complete
+					PaintModel previous = this.paintModel;
+					StreamLoadTask task = new StreamLoadTask(file);
+					this.setPaintModel(task.getPaintModel());
+					task.setOnSucceeded(e -> this.finished(task));
+					task.setOnFailed(e -> {
+						this.finished(task);
+						if (this.paintModel == task.getPaintModel()) this.setPaintModel(previous);
+						this.showError(task.getException().getMessage());
+					});
+					task.setOnCancelled(e -> {
+						this.finished(task);
+						if (this.paintModel == task.getPaintModel()) this.setPaintModel(previous);
+					});
+					this.run(task, "Opening " + file.getName());
 				}
-				PaintModel paintModel = new PaintModel();
-				PaintFileParser parser = new PaintFileParser();
-				parser.parse(bufferedReader,  paintModel);
-				if (paintModel.getError() == true) {
-					Alert alert = new Alert(AlertType.ERROR);
-					alert.setTitle("Error!");
-					alert.setHeaderText("An error has occured.");
-					alert.setContentText(paintModel.getErrorMessage());
-					alert.showAndWait();
-					this.setPaintModel(this.paintModel);
-				}
-				else {
-					this.setPaintModel(paintModel);
-				}		
 			} else {
 				System.out.println("Open command cancelled by user." + "\n");
 			}
@@ -169,32 +269,64 @@ public class View implements EventHandler<ActionEvent> {
 			if (file != null) {
 				// This is where a real application would open the file.
 				System.out.println("Saving: " + file.getName() + "." + "\n");
-				try {
-					writer = new PrintWriter(file);
-				} catch (FileNotFoundException e) {
-					e.printStackTrace();
-				}
-				View.save(writer, this.paintModel);
+				SaveTask task = new SaveTask(this.paintModel, file);
+				task.setOnSucceeded(e -> this.finished(task));
+				task.setOnFailed(e -> {
+					this.finished(task);
+					this.showError("Could not save " + file.getName() + ": " + task.getException().getMessage());
+				});
+				task.setOnCancelled(e -> this.finished(task));
+				this.run(task, "Saving " + file.getName());
 			} else {
 				System.out.println("Save command cancelled by user." + "\n");
 			}
 		} else if (command.equals("New")) {
-			this.paintModel.reset();
-			this.setPaintModel(new PaintModel());
-		}	
+			this.paintModel.reset(); // can be undone
+		} else if (command.equals("Cut")) {
+			List<PaintCommand> selection = new ArrayList<PaintCommand>(this.paintModel.getSelection());
+			this.copy(selection);
+			this.paintModel.removeCommands(selection); // can be undone
+		} else if (command.equals("Copy")) {
+			this.copy(this.paintModel.getSelection());
+		} else if (command.equals("Paste")) {
+			// Copied again, so each paste adds commands of its own, in place of the originals
+			List<PaintCommand> pasted = new ArrayList<PaintCommand>(this.clipboard.size());
+			for (PaintCommand c : this.clipboard) {
+				pasted.add(c.copy());
+			}
+			this.paintModel.addCommands(pasted); // can be undone
+			this.paintModel.select(pasted);
+		} else if (command.equals("Undo")) {
+			this.paintModel.undo();
+		} else if (command.equals("Redo")) {
+			this.paintModel.redo();
+		} else if (command.equals("Zoom In")) {
+			this.paintPanel.zoom(2);
+		} else if (command.equals("Zoom Out")) {
+			this.paintPanel.zoom(0.5);
+		} else if (command.equals("Actual Size")) {
+			this.paintPanel.resetView();
+		}
 	}
 	
+	/**
+	 * Put copies of commands, and only those, on the clipboard, unaffected by later changes to them.
+	 * @param commands
+	 */
+	private void copy(List<PaintCommand> commands) {
+		if (commands.isEmpty()) return;
+		this.clipboard = new ArrayList<PaintCommand>(commands.size());
+		for (PaintCommand c : commands) {
+			this.clipboard.add(c.copy());
+		}
+	}
+
 	/**
 	 * Save the given paintModel to the open file
 	 * @param writer
 	 * @param paintModel
 	 */
 	public static void save(PrintWriter writer, PaintModel paintModel) {
-		writer.println("Paint Save File Version 1.0");
-		for (PaintCommand t: paintModel.getCommands()) {
-			writer.println(t.print());
-		}
-		writer.println("End Paint Save File");
-		writer.close();
+		paintModel.save(writer);
 	}
 }
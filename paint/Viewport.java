@@ -0,0 +1,88 @@
+package ca.utoronto.utm.paint;
+
+import javafx.scene.canvas.GraphicsContext;
+
+/**
+ * The part of the (unbounded) document shown in a PaintPanel: the document
+ * point at the top left of the panel, and how many screen pixels a document
+ * pixel takes. Converts mouse positions to document coordinates, and sets up
+ * a GraphicsContext so commands draw in document coordinates.
+ * RESPONDS-TO PaintPanel, ShapeManipulatorStrategy
+ */
+class Viewport {
+	static final double MIN_SCALE = 1 / 32.0;
+	static final double MAX_SCALE = 32;
+
+	private double x, y; // document point at the top left of the screen
+	private double scale = 1; // screen pixels per document pixel
+
+	double getScale() {
+		return this.scale;
+	}
+
+	/**
+	 * @return the document x coordinate at the left of the screen
+	 */
+	double getX() {
+		return this.x;
+	}
+
+	/**
+	 * @return the document y coordinate at the top of the screen
+	 */
+	double getY() {
+		return this.y;
+	}
+
+	double toDocumentX(double screenX) {
+		return this.x + screenX / this.scale;
+	}
+
+	double toDocumentY(double screenY) {
+		return this.y + screenY / this.scale;
+	}
+
+	/**
+	 * Move the document by (dx,dy) screen pixels.
+	 */
+	void panBy(double dx, double dy) {
+		this.x -= dx / this.scale;
+		this.y -= dy / this.scale;
+	}
+
+	/**
+	 * Multiply the scale by factor, keeping the document point under (screenX,screenY) where it is.
+	 */
+	void zoomAt(double screenX, double screenY, double factor) {
+		double documentX = this.toDocumentX(screenX), documentY = this.toDocumentY(screenY);
+		this.scale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, this.scale * factor));
+		this.x = documentX - screenX / this.scale;
+		this.y = documentY - screenY / this.scale;
+	}
+
+	/**
+	 * Back to the document origin at the top left, at scale 1.
+	 */
+	void reset() {
+		this.x = this.y = 0;
+		this.scale = 1;
+	}
+
+	/**
+	 * @param width of the screen
+	 * @param height of the screen
+	 * @return the area of the document on the screen
+	 */
+	Rect getVisible(double width, double height) {
+		return new Rect((int) Math.floor(this.x), (int) Math.floor(this.y),
+				(int) Math.ceil(this.toDocumentX(width)), (int) Math.ceil(this.toDocumentY(height)));
+	}
+
+	/**
+	 * Make g draw document coordinates where this shows them.
+	 * @param g
+	 */
+	void apply(GraphicsContext g) {
+		g.setTransform(this.scale, 0, 0, this.scale, -this.x * this.scale, -this.y * this.scale);
+	}
+}